@@ -9,12 +9,12 @@ public class ArgBuilder implements ArgClass, ArgArgs, ArgObject {
     private Object actualClassInstance;     // The submission instance
     private Object[] args;                  // The constructor args used to create this object
     private String className;               // The name of the class being used as an argument
-    private StringBuilder sb;               // Used to produce a description of resulting ArgObject
+    private Description sb;                 // Used to produce a description of resulting ArgObject
     private boolean failed;                 // Used to notify TestBuilder that something went wrong
     private String failedMessage;           // A message about what went wrong
 
     private ArgBuilder() {
-        sb = new StringBuilder();
+        sb = new Description();
     }
 
     static ArgClass createObjectArg() { return new ArgBuilder(); }
@@ -54,9 +54,8 @@ public class ArgBuilder implements ArgClass, ArgArgs, ArgObject {
     @Override
     public ArgObject withArgs(Object... args) {
         this.args = args;
-        String argString = TestUtils.argArray2String(args);
-        if (!(className.contains("Node") && argString.contains("without arguments"))) {
-            sb.append(argString).append("\n");
+        if (!(className.contains("Node") && (args == null || args.length == 0))) {
+            sb.appendArgs(args).append("\n");
         }
 //        Object[] expectClassArgs = new Object[args.length];
 //        Object[] actualClassArgs = new Object[args.length];
@@ -0,0 +1,74 @@
+package edu.umb.testutils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Text that stops growing once it reaches a fixed number of characters.
+ *
+ * While text is appended it keeps the statistics used to choose how a value is displayed:
+ * the number of newlines and spaces, the length of the longest line and where each line
+ * ends. Anything past the limit is dropped and the text is marked as full, so a huge value
+ * is never rendered in full only to be omitted afterwards.
+ *
+ * @author James Michaud
+ */
+final class BoundedText {
+    private final StringBuilder sb = new StringBuilder();
+    private final int limit;
+    private final List<String> lines = new ArrayList<>();
+    private boolean full;
+    private int newlines;
+    private int spaces;
+    private int lineLength;         // Length of the current line, split on \n only
+    private int maxLine;
+    private int lineStart;          // Start of the current line, split on \r, \n or \r\n
+    private boolean afterCR;
+
+    BoundedText(int limit) {
+        this.limit = limit;
+    }
+
+    /* Appends as much of text as fits. Returns false once the text is full */
+    boolean append(CharSequence text) {
+        if (full) return false;
+        int fits = Math.min(text.length(), limit - sb.length());
+        for (int i = 0; i < fits; i++) {
+            char c = text.charAt(i);
+            sb.append(c);
+            if (c == ' ') spaces++;
+            if (c == '\n') {
+                newlines++;
+                lineLength = 0;
+                if (!afterCR) lines.add(sb.substring(lineStart, sb.length() - 1));
+                lineStart = sb.length();
+            } else {
+                maxLine = Math.max(maxLine, ++lineLength);
+                if (c == '\r') {
+                    lines.add(sb.substring(lineStart, sb.length() - 1));
+                    lineStart = sb.length();
+                }
+            }
+            afterCR = c == '\r';
+        }
+        if (fits < text.length()) full = true;
+        return !full;
+    }
+
+    boolean isFull()  { return full; }
+    int length()      { return sb.length(); }
+    int remaining()   { return limit - sb.length(); }
+    int newlines()    { return newlines; }
+    int spaces()      { return spaces; }
+    int maxLine()     { return maxLine; }
+
+    /* Returns the lines of the text, the same way BufferedReader.lines() would split them */
+    List<String> lines() {
+        List<String> answer = new ArrayList<>(lines);
+        if (lineStart < sb.length()) answer.add(sb.substring(lineStart));
+        return answer;
+    }
+
+    @Override
+    public String toString() { return sb.toString(); }
+}
@@ -0,0 +1,70 @@
+package edu.umb.testutils;
+
+import dsa.BasicST;
+import dsa.OrderedST;
+import edu.umb.testutils.TestFactory.ValueComparator;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Chooses how a solution value is compared against a submission value.
+ *
+ * The comparator for each (expected class, actual class) pair is found once and cached, so
+ * repeated comparisons of the same types skip the type checks. Comparators registered by the
+ * user through {@link TestFactory#registerComparator(String, ValueComparator)} take priority
+ * over the built-in ones.
+ *
+ * @author James Michaud
+ */
+final class ComparatorRegistry {
+    private static final Logger logger = Logger.getLogger(ComparatorRegistry.class.getName());
+    private static final ConcurrentHashMap<String, ValueComparator> custom = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Class<?>, ConcurrentHashMap<Class<?>, ValueComparator>> cache =
+            new ConcurrentHashMap<>();
+
+    private ComparatorRegistry() { /* no-op */ }
+
+    static void register(String className, ValueComparator comparator) {
+        custom.put(className, comparator);
+        cache.clear();
+    }
+
+    static ValueComparator resolve(Class<?> expectClass, Class<?> actualClass) {
+        return cache.computeIfAbsent(expectClass, c -> new ConcurrentHashMap<>())
+                .computeIfAbsent(actualClass, c -> find(expectClass, actualClass));
+    }
+
+    private static ValueComparator find(Class<?> expectClass, Class<?> actualClass) {
+        logger.finest(() -> String.format("Finding comparator for %s and %s", expectClass, actualClass));
+        ValueComparator comparator = custom.get(expectClass.getName());
+        if (comparator == null) comparator = custom.get(expectClass.getSimpleName());
+        if (comparator != null) return comparator;
+
+        if (expectClass == String.class) {
+            return TestUtils::compareStrings;
+        } else if (expectClass == Double.class || expectClass == Float.class) {
+            return TestUtils::compareDoubles;
+        } else if (TestUtils.isCommonType(expectClass)) {
+            return TestUtils::compareEquals;
+        } else if (expectClass.isArray()) {
+            return TestUtils::compareArrays;
+        } else if (!expectClass.equals(actualClass)
+                && expectClass.toString().equals(actualClass.toString())) {
+            // Prefer the toString method, which is the best way to test equality
+            try {
+                expectClass.getDeclaredMethod("toString");
+                return TestUtils::compareByToString;
+            } catch (NoSuchMethodException e) {
+                return TestUtils::compareByFields;
+            }
+        } else if (Iterable.class.isAssignableFrom(expectClass)) {
+            return TestUtils::compareIterables;
+        } else if (OrderedST.class.isAssignableFrom(expectClass)) {
+            return TestUtils::compareOrderedSTs;
+        } else if (BasicST.class.isAssignableFrom(expectClass)) {
+            return TestUtils::compareBasicSTs;
+        }
+        return TestUtils::compareEquals;
+    }
+}
@@ -0,0 +1,94 @@
+package edu.umb.testutils;
+
+import java.util.ArrayList;
+
+/**
+ * A test description whose expensive pieces are rendered only when the description is read.
+ *
+ * Plain text is stored as given. Argument lists and test results made only of immutable
+ * values are stored as parts that keep a reference to the values and are converted to text
+ * on demand. Anything else is rendered, within its length limit, when it is added, since
+ * the test may change it before the description is read. A brief
+ * rendering, used for passing tests, cuts every such part down to a short summary.
+ *
+ * @author James Michaud
+ */
+final class Description {
+    static final int BRIEF_LENGTH = 200;    // Max length of any lazily rendered part when brief
+
+    /* A piece of the description that is rendered on demand */
+    interface Part {
+        void render(StringBuilder sb, boolean brief);
+    }
+
+    private final ArrayList<Object> parts;  // Each item is either a String or a Part
+
+    Description() {
+        parts = new ArrayList<>();
+    }
+
+    Description(Description other) {
+        parts = new ArrayList<>(other.parts);
+    }
+
+    Description append(Object text) {
+        parts.add(String.valueOf(text));
+        return this;
+    }
+
+    Description append(Part part) {
+        parts.add(part);
+        return this;
+    }
+
+    Description append(Description other) {
+        parts.addAll(other.parts);
+        return this;
+    }
+
+    /*
+     * Appends the "with arguments: (...)" text for args. Immutable arguments are rendered only
+     * when needed. Others, such as an array a method may sort in place, are rendered now.
+     */
+    Description appendArgs(Object[] args) {
+        if (args != null) {
+            for (Object arg : args) {
+                if (!TestUtils.isImmutable(arg)) {
+                    String text = TestUtils.argArray2String(args);
+                    return append((sb, brief) -> appendLimited(sb, text, brief));
+                }
+            }
+        }
+        return append((sb, brief) -> appendLimited(sb, TestUtils.argArray2String(args), brief));
+    }
+
+    boolean isEmpty() { return parts.isEmpty(); }
+    void clear()      { parts.clear(); }
+
+    String render(boolean brief) {
+        StringBuilder sb = new StringBuilder();
+        for (Object part : parts) {
+            if (part instanceof Part) {
+                try {
+                    ((Part) part).render(sb, brief);
+                } catch (RuntimeException | StackOverflowError e) {
+                    sb.append("(could not be displayed: ").append(e).append(")\n");
+                }
+            } else {
+                sb.append((String) part);
+            }
+        }
+        return sb.toString();
+    }
+
+    static void appendLimited(StringBuilder sb, String text, boolean brief) {
+        if (brief && text.length() > BRIEF_LENGTH) {
+            sb.append(text, 0, BRIEF_LENGTH).append(" ...");
+        } else {
+            sb.append(text);
+        }
+    }
+
+    @Override
+    public String toString() { return render(false); }
+}
@@ -0,0 +1,79 @@
+package edu.umb.testutils;
+
+import java.util.Iterator;
+
+/**
+ * A streaming 64-bit hash of text or of sequences of values.
+ *
+ * Fingerprints let a large output or sequence be checked without keeping the expected version
+ * in memory. When two fingerprints differ, the outputs differ. When they match, the outputs
+ * are treated as equal. Values are hashed by their string form, the same way the detailed
+ * comparisons look at them.
+ *
+ * @author James Michaud
+ */
+final class Fingerprint {
+    private static final long OFFSET = 0xcbf29ce484222325L;    // FNV-1a, 64 bit
+    private static final long PRIME  = 0x100000001b3L;
+
+    private long hash;
+    private long length;
+
+    Fingerprint() {
+        hash = OFFSET;
+    }
+
+    Fingerprint update(CharSequence text) {
+        long h = hash;
+        for (int i = 0; i < text.length(); i++) {
+            h ^= text.charAt(i);
+            h *= PRIME;
+        }
+        hash = h;
+        length += text.length();
+        return this;
+    }
+
+    /* Number of characters, or values for a sequence, hashed so far */
+    long length() { return length; }
+
+    long value() { return mix(hash ^ length); }
+
+    /* Stored form: {value, length} */
+    long[] toArray() { return new long[]{value(), length}; }
+
+    boolean matches(long[] stored) {
+        return stored != null && value() == stored[0] && length == stored[1];
+    }
+
+    static long of(String text) {
+        return new Fingerprint().update(text).value();
+    }
+
+    /*
+     * Hashes the remaining values of iter in order, stopping after limit values. The length
+     * is the number of values hashed.
+     */
+    static Fingerprint ofSequence(Iterator<?> iter, long limit) {
+        Fingerprint fingerprint = new Fingerprint();
+        long h = OFFSET;
+        long count = 0;
+        while (count < limit && iter.hasNext()) {
+            h = (h ^ of(String.valueOf(iter.next()))) * PRIME;
+            count++;
+        }
+        fingerprint.hash = h;
+        fingerprint.length = count;
+        return fingerprint;
+    }
+
+    // Final mixing step of MurmurHash3
+    private static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -0,0 +1,431 @@
+package edu.umb.testutils;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Stores the solution side of each test (return values, standard output and iterator
+ * sequences) so that grading runs only need to invoke the submission.
+ *
+ * In record mode, every solution result is collected and written to the archive once all
+ * tests are done. In read mode, the archive is memory-mapped and indexed by test fingerprint,
+ * a hash of the test's number, type, class, method, raw arguments and standard input contents
+ * taken before the test runs. Tests built on objects prepared by setup steps are never
+ * archived, since those objects may be shared with other tests. Entries are stamped with a checksum of the .class files in the solution's package
+ * directory, so an entry is treated as missing whenever the solution or a helper class next
+ * to it has been recompiled since it was recorded. Classes elsewhere on the solution's
+ * classpath, such as library jars, are not covered by the stamp. Large outputs
+ * and sequences are stored only as a {@link Fingerprint}. A submission that matches the
+ * fingerprint passes, and any other submission is compared against a fresh solution run.
+ *
+ * @author James Michaud
+ */
+final class GoldenArchive {
+    private static final Logger logger = Logger.getLogger(GoldenArchive.class.getName());
+    private static final int MAGIC   = 0x474f4c44;  // "GOLD"
+    private static final int VERSION = 1;
+
+    // Entry kinds. Values are stored as their string form alongside the boxed type.
+    private static final byte NULL      = 0;
+    private static final byte STRING    = 1;
+    private static final byte INTEGER   = 2;
+    private static final byte LONG      = 3;
+    private static final byte DOUBLE    = 4;
+    private static final byte FLOAT     = 5;
+    private static final byte BOOLEAN   = 6;
+    private static final byte CHARACTER = 7;
+    private static final byte SHORT     = 8;
+    private static final byte BYTE      = 9;
+    private static final byte OUTPUT    = 10;
+    private static final byte SEQUENCE  = 11;
+    private static final byte OUTPUT_FINGERPRINT   = 12;
+    private static final byte SEQUENCE_FINGERPRINT = 13;
+
+    static final int FINGERPRINT_CHARS  = 1 << 16;  // Longer outputs are stored as fingerprints
+    static final int FINGERPRINT_VALUES = 1 << 12;  // Longer sequences are stored as fingerprints
+
+    /** Returned by {@link #lookupValue(Test)} when no usable entry exists. */
+    static final Object MISSING = new Object();
+
+    private static boolean recording;
+    private static String path;
+    private static MappedByteBuffer mapped;
+    private static HashMap<Long, Integer> index;             // fingerprint -> entry offset
+    private static LinkedHashMap<Long, byte[]> recorded;     // fingerprint -> encoded entry
+    private static final HashMap<Class<?>, Long> stamps = new HashMap<>();   // class -> package CRC
+    private static final Map<Test, Long> keys =                             // test -> fingerprint
+            Collections.synchronizedMap(new IdentityHashMap<>());
+
+    private GoldenArchive() { /* no-op */ }
+
+    static void record(String archivePath) {
+        logger.info(String.format("Recording solution results to %s", archivePath));
+        recording = true;
+        path = archivePath;
+        recorded = new LinkedHashMap<>();
+    }
+
+    static void open(String archivePath) {
+        recording = false;
+        path = archivePath;
+        index = new HashMap<>();
+        try (FileChannel channel = FileChannel.open(Paths.get(archivePath), StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.getInt() != MAGIC || mapped.getInt() != VERSION) {
+                logger.warning(String.format("%s is not a solution archive. Ignoring it", archivePath));
+                mapped = null;
+                return;
+            }
+            int count = mapped.getInt();
+            for (int i = 0; i < count; i++) {
+                int offset = mapped.position();
+                long key = mapped.getLong();
+                mapped.position(mapped.position() + 8 + 1);      // stamp, kind
+                int length = mapped.getInt();
+                mapped.position(mapped.position() + length);
+                index.put(key, offset);
+            }
+            logger.info(String.format("Loaded %d archived solution results from %s", count, archivePath));
+        } catch (IOException | RuntimeException e) {
+            logger.warning(String.format("Could not read solution archive %s: %s", archivePath, e));
+            mapped = null;
+        }
+    }
+
+    static boolean isRecording() { return recording; }
+    static boolean isReading()   { return mapped != null; }
+
+    /* ****************************************************************************************** */
+    /* Lookup (read mode) */
+    /* ****************************************************************************************** */
+
+    static Object lookupValue(Test test) {
+        ByteBufferEntry entry = find(test);
+        if (entry == null || entry.kind >= OUTPUT) return MISSING;
+        return decodeValue(entry.kind, entry.payload);
+    }
+
+    static String lookupOutput(Test test) {
+        ByteBufferEntry entry = find(test);
+        if (entry == null || entry.kind != OUTPUT) return null;
+        return new String(entry.payload, StandardCharsets.UTF_8);
+    }
+
+    static List<String> lookupSequence(Test test) {
+        ByteBufferEntry entry = find(test);
+        if (entry == null || entry.kind != SEQUENCE) return null;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry.payload))) {
+            int size = in.readInt();
+            List<String> sequence = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) sequence.add(in.readUTF());
+            return sequence;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /* Returns the {value, length} fingerprint of a large output, or null */
+    static long[] lookupOutputFingerprint(Test test) {
+        return lookupFingerprint(test, OUTPUT_FINGERPRINT);
+    }
+
+    /* Returns the {value, length} fingerprint of a large sequence, or null */
+    static long[] lookupSequenceFingerprint(Test test) {
+        return lookupFingerprint(test, SEQUENCE_FINGERPRINT);
+    }
+
+    private static long[] lookupFingerprint(Test test, byte kind) {
+        ByteBufferEntry entry = find(test);
+        if (entry == null || entry.kind != kind) return null;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry.payload))) {
+            return new long[]{in.readLong(), in.readLong()};
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static ByteBufferEntry find(Test test) {
+        if (!isArchivable(test)) return null;
+        long key = fingerprint(test);   // Taken now, before the test can change its arguments
+        if (mapped == null) return null;
+        Integer offset = index.get(key);
+        if (offset == null) return null;
+        synchronized (GoldenArchive.class) {
+            mapped.position(offset + 8);
+            long stamp = mapped.getLong();
+            if (stamp != stamp(test.getExpectClass())) {
+                logger.fine(() -> String.format("Archived result for test %d is stale",
+                        test.getNumber()));
+                return null;
+            }
+            byte kind = mapped.get();
+            byte[] payload = new byte[mapped.getInt()];
+            mapped.get(payload);
+            return new ByteBufferEntry(kind, payload);
+        }
+    }
+
+    private static final class ByteBufferEntry {
+        private final byte kind;
+        private final byte[] payload;
+        private ByteBufferEntry(byte kind, byte[] payload) {
+            this.kind = kind;
+            this.payload = payload;
+        }
+    }
+
+    /* ****************************************************************************************** */
+    /* Recording (record mode) */
+    /* ****************************************************************************************** */
+
+    static void recordValue(Test test, Object value) {
+        if (!recording || !isArchivable(test)) return;
+        byte kind = kindOf(value);
+        if (kind < 0) return;   // Not a value type. The solution will be invoked during grading.
+        put(test, kind, value == null ? new byte[0]
+                : value.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    static void recordOutput(Test test, String output) {
+        if (!recording || !isArchivable(test)) return;
+        if (output.length() > FINGERPRINT_CHARS) {
+            putFingerprint(test, OUTPUT_FINGERPRINT, new Fingerprint().update(output));
+        } else {
+            put(test, OUTPUT, output.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    static void recordSequence(Test test, List<String> sequence) {
+        if (!recording || !isArchivable(test)) return;
+        if (sequence.size() > FINGERPRINT_VALUES) {
+            putFingerprint(test, SEQUENCE_FINGERPRINT, Fingerprint.ofSequence(sequence.iterator(), Long.MAX_VALUE));
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(sequence.size());
+            for (String s : sequence) out.writeUTF(s);
+        } catch (IOException e) {
+            return;     // writeUTF rejects very long strings. Leave the entry out.
+        }
+        put(test, SEQUENCE, bytes.toByteArray());
+    }
+
+    private static void putFingerprint(Test test, byte kind, Fingerprint fingerprint) {
+        long[] stored = fingerprint.toArray();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(stored[0]);
+            out.writeLong(stored[1]);
+        } catch (IOException e) {
+            return;
+        }
+        put(test, kind, bytes.toByteArray());
+    }
+
+    private static void put(Test test, byte kind, byte[] payload) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 21);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            long key = fingerprint(test);
+            out.writeLong(key);
+            out.writeLong(stamp(test.getExpectClass()));
+            out.writeByte(kind);
+            out.writeInt(payload.length);
+            out.write(payload);
+            recorded.put(key, bytes.toByteArray());
+        } catch (IOException e) {
+            logger.warning(String.format("Could not archive result of test %d", test.getNumber()));
+        }
+    }
+
+    /**
+     * Writes all recorded entries to the archive file. Called once all tests are done.
+     */
+    static void flush() {
+        if (!recording || recorded == null) return;
+        Path target = Paths.get(path);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(target)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(recorded.size());
+            for (byte[] entry : recorded.values()) out.write(entry);
+            logger.info(String.format("Wrote %d solution results to %s", recorded.size(), path));
+        } catch (IOException e) {
+            logger.warning(String.format("Could not write solution archive %s: %s", path, e));
+        }
+    }
+
+    /* ****************************************************************************************** */
+    /* Helper methods */
+    /* ****************************************************************************************** */
+
+    /*
+     * Seeded tests receive a fresh random seed on each run, so their results cannot be reused.
+     * Neither can those of tests whose instances or arguments were built by setup steps: such
+     * objects can be shared with other tests, and skipping the solution's call would leave
+     * its copy behind the submission's for every test that follows.
+     */
+    private static boolean isArchivable(Test test) {
+        return !test.seedIsSet() && test.getExpectClass() != null && !test.sharesInstances()
+                && !hasSetUpArg(test.getConstructorArgs()) && !hasSetUpArg(test.getMethodArgs());
+    }
+
+    private static boolean hasSetUpArg(Object[] args) {
+        if (args == null) return false;
+        for (Object arg : args) {
+            if (arg instanceof ArgBuilder) return true;
+            if (arg instanceof Object[] && hasSetUpArg((Object[]) arg)) return true;
+        }
+        return false;
+    }
+
+    /*
+     * Returns the key of the test's archive entry. It is computed the first time it is asked
+     * for, which is before the test runs, and kept, since a test may change its arguments.
+     */
+    static long fingerprint(Test test) {
+        Long key = keys.get(test);
+        if (key == null) {
+            long hash = 0xcbf29ce484222325L;
+            hash = mix(hash, String.valueOf(test.getNumber()));
+            hash = mix(hash, String.valueOf(test.getTestType()));
+            hash = mix(hash, test.getClassName());
+            hash = mix(hash, test.getMethodName());
+            hash = mix(hash, test.getFieldName());
+            hash = mix(hash, test.getStdInput());
+            if (test.getStdInput() != null) {
+                hash = mix(hash, String.valueOf(InputSources.checksum(test.getStdInput())));
+            }
+            hash = mixArgs(hash, test.getConstructorArgs());
+            hash = mixArgs(hash, test.getMethodArgs());
+            key = hash;
+            keys.put(test, key);
+        }
+        return key;
+    }
+
+    private static long mixArgs(long hash, Object[] args) {
+        if (args == null) return mix(hash, null);
+        hash = mix(hash, String.valueOf(args.length));
+        for (Object arg : args) hash = mixArg(hash, arg);
+        return hash;
+    }
+
+    // Hashes an argument by its contents, without rendering it as text
+    private static long mixArg(long hash, Object arg) {
+        if (arg instanceof Object[]) {
+            return mixArgs(hash, (Object[]) arg);
+        } else if (arg instanceof int[]) {
+            return mix(hash, "int[" + Arrays.hashCode((int[]) arg) + ((int[]) arg).length);
+        } else if (arg instanceof long[]) {
+            return mix(hash, "long[" + Arrays.hashCode((long[]) arg) + ((long[]) arg).length);
+        } else if (arg instanceof double[]) {
+            return mix(hash, "double[" + Arrays.hashCode((double[]) arg) + ((double[]) arg).length);
+        } else if (arg instanceof char[]) {
+            return mix(hash, "char[" + Arrays.hashCode((char[]) arg) + ((char[]) arg).length);
+        } else if (arg instanceof boolean[]) {
+            return mix(hash, "boolean[" + Arrays.hashCode((boolean[]) arg) + ((boolean[]) arg).length);
+        } else if (arg instanceof byte[]) {
+            return mix(hash, "byte[" + Arrays.hashCode((byte[]) arg) + ((byte[]) arg).length);
+        } else if (arg instanceof short[]) {
+            return mix(hash, "short[" + Arrays.hashCode((short[]) arg) + ((short[]) arg).length);
+        } else if (arg instanceof float[]) {
+            return mix(hash, "float[" + Arrays.hashCode((float[]) arg) + ((float[]) arg).length);
+        } else {
+            return mix(hash, arg == null ? null : arg.getClass().getName() + ":" + arg);
+        }
+    }
+
+    // FNV-1a, 64 bit
+    private static long mix(long hash, String str) {
+        if (str == null) str = "\u0000";
+        for (int i = 0; i < str.length(); i++) {
+            hash ^= str.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= 0xff;
+        return hash * 0x100000001b3L;
+    }
+
+    /*
+     * Returns a checksum of every .class file in the directory holding clazz, so recompiling
+     * a helper class of the solution also invalidates its entries. When the class is not
+     * loaded from a directory, only its own .class file is checked.
+     */
+    private static long stamp(Class<?> clazz) {
+        if (clazz == null) return 0;
+        synchronized (stamps) {
+            Long stamp = stamps.get(clazz);
+            if (stamp == null) {
+                CRC32 crc = new CRC32();
+                String resource = clazz.getName().replace('.', '/') + ".class";
+                try {
+                    URL url = clazz.getClassLoader().getResource(resource);
+                    File[] classes = url != null && "file".equals(url.getProtocol())
+                            ? new File(url.toURI()).getParentFile()
+                                    .listFiles((dir, name) -> name.endsWith(".class"))
+                            : null;
+                    if (classes != null) {
+                        Arrays.sort(classes);
+                        for (File file : classes) {
+                            crc.update(file.getName().getBytes(StandardCharsets.UTF_8));
+                            crc.update(Files.readAllBytes(file.toPath()));
+                        }
+                    } else {
+                        try (InputStream in = clazz.getClassLoader().getResourceAsStream(resource)) {
+                            if (in != null) crc.update(in.readAllBytes());
+                        }
+                    }
+                } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+                    // Leave the checksum as it is
+                }
+                stamp = crc.getValue();
+                stamps.put(clazz, stamp);
+            }
+            return stamp;
+        }
+    }
+
+    private static byte kindOf(Object value) {
+        return    value == null                ? NULL
+                : value instanceof String      ? STRING
+                : value instanceof Integer     ? INTEGER
+                : value instanceof Long        ? LONG
+                : value instanceof Double      ? DOUBLE
+                : value instanceof Float       ? FLOAT
+                : value instanceof Boolean     ? BOOLEAN
+                : value instanceof Character   ? CHARACTER
+                : value instanceof Short       ? SHORT
+                : value instanceof Byte        ? BYTE
+                : -1;
+    }
+
+    private static Object decodeValue(byte kind, byte[] payload) {
+        String str = new String(payload, StandardCharsets.UTF_8);
+        switch (kind) {
+            case NULL:      return null;
+            case STRING:    return str;
+            case INTEGER:   return Integer.valueOf(str);
+            case LONG:      return Long.valueOf(str);
+            case DOUBLE:    return Double.valueOf(str);
+            case FLOAT:     return Float.valueOf(str);
+            case BOOLEAN:   return Boolean.valueOf(str);
+            case CHARACTER: return str.charAt(0);
+            case SHORT:     return Short.valueOf(str);
+            case BYTE:      return Byte.valueOf(str);
+            default:        return MISSING;
+        }
+    }
+}
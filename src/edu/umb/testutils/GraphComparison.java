@@ -0,0 +1,204 @@
+package edu.umb.testutils;
+
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares two object graphs field by field, such as a solution's linked structure and the
+ * submission's version of it.
+ *
+ * The comparison uses an explicit worklist instead of recursion, so the depth of the
+ * structure is limited only by the depth budget. Each object is visited once. Objects already
+ * visited on one side must line up with the same object on the other side, which keeps cyclic
+ * structures (like a doubly linked list) from looping forever, and catches nodes that are
+ * shared or linked differently. Failure messages include the path from the root to the
+ * first difference.
+ *
+ * @author James Michaud
+ */
+final class GraphComparison {
+    static final int MAX_DEPTH = 10_000_000;    // Longest path followed from the root
+    static final int MAX_NODES = 10_000_000;    // Most objects compared on each side
+
+    private final String hint;
+    private final int maxDepth;
+    private final int maxNodes;
+    private final IdentityHashMap<Object, Object> expectSeen;    // expect object -> actual object
+    private final IdentityHashMap<Object, Object> actualSeen;    // actual object -> expect object
+    private final HashMap<Class<?>, Field[]> fields;
+    private final HashMap<Class<?>, HashMap<String, Field>> fieldsByName;
+    private final HashMap<Class<?>, Boolean> declaresToString;
+
+    /* One pair of objects waiting to be compared */
+    private static final class Frame {
+        private final Object expect;
+        private final Object actual;
+        private final Frame parent;
+        private final String fieldName;
+        private final int depth;
+
+        private Frame(Object expect, Object actual, Frame parent, String fieldName, int depth) {
+            this.expect = expect;
+            this.actual = actual;
+            this.parent = parent;
+            this.fieldName = fieldName;
+            this.depth = depth;
+        }
+    }
+
+    private GraphComparison(String hint, int maxDepth, int maxNodes) {
+        this.hint = hint;
+        this.maxDepth = maxDepth;
+        this.maxNodes = maxNodes;
+        expectSeen = new IdentityHashMap<>();
+        actualSeen = new IdentityHashMap<>();
+        fields = new HashMap<>();
+        fieldsByName = new HashMap<>();
+        declaresToString = new HashMap<>();
+    }
+
+    static void compare(Object expect, Object actual, String hint) {
+        compare(expect, actual, hint, MAX_DEPTH, MAX_NODES);
+    }
+
+    static void compare(Object expect, Object actual, String hint, int maxDepth, int maxNodes) {
+        new GraphComparison(hint, maxDepth, maxNodes).run(expect, actual);
+    }
+
+    private void run(Object expect, Object actual) {
+        ArrayDeque<Frame> work = new ArrayDeque<>();
+        work.push(new Frame(expect, actual, null, "Start", 0));
+        int nodes = 0;
+        while (!work.isEmpty()) {
+            Frame frame = work.pop();
+            Object seenActual = expectSeen.get(frame.expect);
+            Object seenExpect = actualSeen.get(frame.actual);
+            if (seenActual != null || seenExpect != null) {
+                if (seenActual == frame.actual && seenExpect == frame.expect) continue;
+                fail(String.format("\nThe structure is linked differently than expected. " +
+                        "Path to the difference: %s\n%s\n", path(frame), hint));
+            }
+            expectSeen.put(frame.expect, frame.actual);
+            actualSeen.put(frame.actual, frame.expect);
+            if (++nodes > maxNodes) {
+                fail(String.format("\nComparison stopped after %d objects. Path so far: %s\n%s\n",
+                        maxNodes, path(frame), hint));
+            }
+            compareNode(frame, work);
+        }
+    }
+
+    private void compareNode(Frame frame, ArrayDeque<Frame> work) {
+        Class<?> expectClass = frame.expect.getClass();
+        Class<?> actualClass = frame.actual.getClass();
+        Field[] expectFields = fieldsOf(expectClass);
+        fieldsOf(actualClass);
+        HashMap<String, Field> actualFields = fieldsByName.get(actualClass);
+        // Fields are checked in declaration order. Child objects are pushed afterwards, in
+        // reverse, so they are also visited in declaration order.
+        ArrayList<Frame> children = new ArrayList<>();
+        for (Field expectField : expectFields) {
+            Field actualField = actualFields.get(expectField.getName());
+            if (actualField == null) {
+                fail(String.format("\nFailed when comparing the <%s> field of <%s>\n" +
+                                "Field missing: %s\nPath: %s\n%s\n",
+                        expectField.getName(), expectClass.getSimpleName(),
+                        expectField.getName(), path(frame), hint));
+            }
+            Object expectFieldObj;
+            Object actualFieldObj;
+            try {
+                expectFieldObj = expectField.get(frame.expect);
+                actualFieldObj = actualField.get(frame.actual);
+            } catch (IllegalAccessException e) {
+                fail("Error accessing field. (TestUtils#compareFields -> IllegalAccessException)");
+                return;
+            }
+            Class<?> expectFieldType = expectField.getType();
+            Class<?> actualFieldType = actualField.getType();
+            Supplier<String> msg = () -> String.format("\nFailed when comparing the <%s> field of " +
+                            "<%s> at level %d\nPath: %s\n%s\n", expectField.getName(),
+                    expectClass.getSimpleName(), frame.depth, path(frame), hint);
+
+            if (expectFieldObj != null && actualFieldObj != null &&
+                    !expectFieldType.equals(actualFieldType) &&
+                    expectFieldType.toString().equals(actualFieldType.toString())) {
+                if (declaresToString(expectFieldType)) {
+                    assertEquals(expectFieldObj.toString(), actualFieldObj.toString(),
+                            () -> "\nUsing the toString() method to compare objects." + msg.get());
+                } else {
+                    // No defined toString method, so check each of the object's fields
+                    if (frame.depth + 1 > maxDepth) {
+                        fail(String.format("\nComparison stopped at depth %d. Path so far: %s\n%s\n",
+                                maxDepth, path(frame), hint));
+                    }
+                    children.add(new Frame(expectFieldObj, actualFieldObj, frame,
+                            expectField.getName(), frame.depth + 1));
+                }
+            } else if (expectFieldObj != null && actualFieldObj != null &&
+                    Iterable.class.isAssignableFrom(expectFieldType)) {
+                TestUtils.compareIterators(
+                        ((Iterable<?>) expectFieldObj).iterator(),
+                        ((Iterable<?>) actualFieldObj).iterator(), msg.get());
+            } else if (declaresToString(expectFieldType) && expectFieldObj != null) {
+                assertEquals(expectFieldObj.toString(), String.valueOf(actualFieldObj),
+                        () -> "\nUsing the toString() method to compare objects." + msg.get());
+            } else {
+                assertEquals(expectFieldObj, actualFieldObj, msg);
+            }
+        }
+        for (int i = children.size() - 1; i >= 0; i--) work.push(children.get(i));
+    }
+
+    private Field[] fieldsOf(Class<?> clazz) {
+        Field[] found = fields.get(clazz);
+        if (found == null) {
+            List<Field> list = new ArrayList<>();
+            HashMap<String, Field> byName = new HashMap<>();
+            for (Field field : clazz.getDeclaredFields()) {
+                // Inner classes have a reference to the outer class. Avoid circular reference.
+                if (field.getName().equals("this$0")) continue;
+                field.setAccessible(true);
+                list.add(field);
+                byName.put(field.getName(), field);
+            }
+            found = list.toArray(new Field[0]);
+            fields.put(clazz, found);
+            fieldsByName.put(clazz, byName);
+        }
+        return found;
+    }
+
+    private boolean declaresToString(Class<?> clazz) {
+        return declaresToString.computeIfAbsent(clazz, c -> {
+            try {
+                c.getDeclaredMethod("toString");
+                return true;
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        });
+    }
+
+    /* Renders the path from the root to frame, collapsing repeated steps: Start.next(x3).left */
+    private static String path(Frame frame) {
+        ArrayList<String> names = new ArrayList<>();
+        for (Frame curr = frame; curr != null; curr = curr.parent) names.add(curr.fieldName);
+        StringBuilder sb = new StringBuilder();
+        for (int i = names.size() - 1; i >= 0; ) {
+            String name = names.get(i);
+            int run = 0;
+            while (i >= 0 && names.get(i).equals(name)) {
+                run++;
+                i--;
+            }
+            if (sb.length() > 0) sb.append('.');
+            sb.append(name);
+            if (run > 1) sb.append("(x").append(run).append(')');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,119 @@
+package edu.umb.testutils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+import java.util.logging.Logger;
+
+/**
+ * Caches the sources used as standard input. Each file is mapped into memory the first time
+ * it is requested, and every later request gets a new stream over the same read-only buffer.
+ * Names that do not refer to an existing file are used as the input text itself. A file that
+ * exists but cannot be read is reported rather than silently replaced by its name.
+ *
+ * @author James Michaud
+ */
+final class InputSources {
+    private static final Logger logger = Logger.getLogger(InputSources.class.getName());
+    private static final HashMap<String, ByteBuffer> sources = new HashMap<>();
+
+    private InputSources() { /* no-op */ }
+
+    static synchronized InputStream open(String name) {
+        return new BufferInputStream(source(name).duplicate());
+    }
+
+    /* Returns a checksum of the input the name stands for */
+    static synchronized long checksum(String name) {
+        CRC32 crc = new CRC32();
+        crc.update(source(name).duplicate());
+        return crc.getValue();
+    }
+
+    private static ByteBuffer source(String name) {
+        ByteBuffer source = sources.get(name);
+        if (source == null) {
+            source = load(name);
+            sources.put(name, source);
+        }
+        return source;
+    }
+
+    private static ByteBuffer load(String name) {
+        Path path;
+        try {
+            path = Paths.get(name);
+        } catch (InvalidPathException e) {
+            path = null;
+        }
+        if (path == null || Files.notExists(path)) {
+            logger.finer(() -> String.format("No file named %s. Using the name as input", name));
+            return ByteBuffer.wrap(name.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("the file is larger than 2GB");
+            }
+            logger.finer(() -> String.format("Mapping %s for use as standard input", name));
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .asReadOnlyBuffer();
+        } catch (IOException e) {
+            logger.warning(String.format("Could not read %s for use as standard input: %s",
+                    name, e));
+            throw new UncheckedIOException("Could not read standard input file " + name, e);
+        }
+    }
+
+    /* A stream over a private view of a shared buffer. */
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+            buffer.mark();
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() { return buffer.remaining(); }
+
+        @Override
+        public boolean markSupported() { return true; }
+
+        @Override
+        public synchronized void mark(int readLimit) { buffer.mark(); }
+
+        @Override
+        public synchronized void reset() { buffer.reset(); }
+    }
+}
@@ -0,0 +1,117 @@
+package edu.umb.testutils;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes JSON objects straight to a {@link Writer}, escaping strings in a single pass.
+ *
+ * Strings are escaped as they are copied into a small buffer, so no escaped copy of the text
+ * is ever built. Line breaks of any kind (\r\n, \r or \n) are written as \n, tabs are replaced
+ * by four spaces so the output lines up on Gradescope, and other control characters are
+ * written as unicode escapes.
+ *
+ * @author James Michaud
+ */
+final class JsonWriter {
+    private final Writer out;
+    private final char[] buffer;
+    private int size;
+    private boolean needsComma;
+    private boolean afterCR;                // Last character written into a string was \r
+
+    JsonWriter(Writer out) {
+        this.out = out;
+        buffer = new char[4096];
+    }
+
+    JsonWriter beginObject() throws IOException {
+        put('{');
+        needsComma = false;
+        return this;
+    }
+
+    JsonWriter endObject() throws IOException {
+        put('}');
+        needsComma = true;
+        return this;
+    }
+
+    /* Writes "name": "value", where the value is the given parts joined together */
+    JsonWriter field(String name, CharSequence... parts) throws IOException {
+        name(name);
+        put('"');
+        afterCR = false;
+        for (CharSequence part : parts) escape(part);
+        put('"');
+        return this;
+    }
+
+    /* Writes "name": value, with the value rounded to two decimal places */
+    JsonWriter field(String name, double value) throws IOException {
+        name(name);
+        putAll(String.format("%.2f", value));
+        return this;
+    }
+
+    void flush() throws IOException {
+        out.write(buffer, 0, size);
+        size = 0;
+        out.flush();
+    }
+
+    private void name(String name) throws IOException {
+        if (needsComma) put(',');
+        put('"');
+        afterCR = false;
+        escape(name);
+        putAll("\": ");
+        needsComma = true;
+    }
+
+    private void escape(CharSequence text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            boolean cr = false;
+            switch (c) {
+                case '\r':
+                    putAll("\\n");
+                    cr = true;
+                    break;
+                case '\n':
+                    if (!afterCR) putAll("\\n");
+                    break;
+                case '\t':
+                    putAll("    ");
+                    break;
+                case '"':
+                    putAll("\\\"");
+                    break;
+                case '\\':
+                    putAll("\\\\");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        putAll("\\u00");
+                        put(Character.forDigit(c >> 4, 16));
+                        put(Character.forDigit(c & 0xf, 16));
+                    } else {
+                        put(c);
+                    }
+            }
+            afterCR = cr;
+        }
+    }
+
+    private void putAll(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) put(text.charAt(i));
+    }
+
+    private void put(char c) throws IOException {
+        if (size == buffer.length) {
+            out.write(buffer, 0, size);
+            size = 0;
+        }
+        buffer[size++] = c;
+    }
+}
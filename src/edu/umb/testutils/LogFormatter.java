@@ -1,55 +1,140 @@
 package edu.umb.testutils;
 
-import java.io.PrintWriter;
-import java.io.StringWriter;
 import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.TimeZone;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 import java.util.logging.Formatter;
 import java.util.logging.LogRecord;
 
+/**
+ * Formats log records as "LEVEL  : HH:mm:ss.SSS Class.method: message".
+ *
+ * Records are appended into a buffer reused by each thread. The time of day is computed from
+ * the record's milliseconds using a cached zone offset, which is looked up again only when
+ * the time passes the zone's next offset transition.
+ */
 public class LogFormatter extends Formatter {
+    private static final int MAX_KEPT_BUFFER = 1 << 16;
+    private static final ThreadLocal<StringBuilder> buffers =
+            ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private final ZoneRules rules = ZoneId.systemDefault().getRules();
+    private volatile long[] offset = {0, Long.MIN_VALUE, Long.MIN_VALUE};   // offset, from, until
+
     @Override
     public String format(LogRecord record) {
-        StringBuilder sb = new StringBuilder();
+        StringBuilder sb = buffers.get();
+        sb.setLength(0);
 
-        sb.append(String.format("%-7s: ", record.getLevel().getLocalizedName()));
+        String level = record.getLevel().getLocalizedName();
+        sb.append(level);
+        for (int i = level.length(); i < 7; i++) sb.append(' ');
+        sb.append(": ");
 
-        LocalDateTime time = LocalDateTime.ofInstant(
-                Instant.ofEpochMilli(record.getMillis()),
-                TimeZone.getDefault().toZoneId()
-        );
-        sb.append(time.format(DateTimeFormatter.ofPattern("HH:mm:ss.SSS"))).append(" ");
+        appendTime(sb, record.getMillis());
+        sb.append(' ');
 
         String name = record.getSourceClassName();
         if (name != null) {
-            sb.append(name.substring(name.lastIndexOf(".")+1));
+            sb.append(name, name.lastIndexOf('.') + 1, name.length());
         } else {
             sb.append(record.getLoggerName());
         }
 
         if (record.getSourceMethodName() != null) {
-            sb.append(".");
+            sb.append('.');
             sb.append(record.getSourceMethodName());
         }
         sb.append(": ");
-        String message = record.getMessage();
-        if (message.contains("\n")) {
-            message = String.format("\n    %s", message.replace("\n", "\n    "));
+        String message = String.valueOf(record.getMessage());
+        if (message.indexOf('\n') >= 0) {
+            sb.append("\n    ");
+            for (int i = 0; i < message.length(); i++) {
+                char c = message.charAt(i);
+                sb.append(c);
+                if (c == '\n') sb.append("    ");
+            }
+        } else {
+            sb.append(message);
         }
-        sb.append(message).append("\n");
+        sb.append('\n');
         if (record.getThrown() != null) {
-            try {
-                StringWriter sw = new StringWriter();
-                PrintWriter pw = new PrintWriter(sw);
-                record.getThrown().printStackTrace(pw);
-                pw.close();
-                sb.append(sw.toString());
-            } catch (Exception ex) {
-                // Do nothing?
-            }
+            appendThrowable(sb, record.getThrown(), new StackTraceElement[0], "", "",
+                    Collections.newSetFromMap(new IdentityHashMap<>()));
+        }
+
+        String formatted = sb.toString();
+        if (sb.capacity() > MAX_KEPT_BUFFER) buffers.remove();
+        return formatted;
+    }
+
+    /* Appends the time of day, HH:mm:ss.SSS, in the default time zone */
+    private void appendTime(StringBuilder sb, long millis) {
+        long[] current = offset;
+        if (millis < current[1] || millis >= current[2]) {
+            current = lookupOffset(millis);
+            offset = current;
+        }
+        long ofDay = Math.floorMod(millis + current[0], 86_400_000L);
+        appendDigits(sb, ofDay / 3_600_000, 2);
+        sb.append(':');
+        appendDigits(sb, ofDay / 60_000 % 60, 2);
+        sb.append(':');
+        appendDigits(sb, ofDay / 1000 % 60, 2);
+        sb.append('.');
+        appendDigits(sb, ofDay % 1000, 3);
+    }
+
+    /* Returns the zone offset at millis, with the range of times it stays valid for */
+    private long[] lookupOffset(long millis) {
+        Instant instant = Instant.ofEpochMilli(millis);
+        long offsetMillis = rules.getOffset(instant).getTotalSeconds() * 1000L;
+        ZoneOffsetTransition previous = rules.previousTransition(instant.plusMillis(1));
+        ZoneOffsetTransition next = rules.nextTransition(instant);
+        long from = previous == null ? Long.MIN_VALUE : previous.toEpochSecond() * 1000;
+        long until = next == null ? Long.MAX_VALUE : next.toEpochSecond() * 1000;
+        return new long[]{offsetMillis, from, until};
+    }
+
+    private static void appendDigits(StringBuilder sb, long value, int width) {
+        if (width == 3 && value < 100) sb.append('0');
+        if (value < 10) sb.append('0');
+        sb.append(value);
+    }
+
+    /* Appends the stack trace the same way Throwable.printStackTrace() would */
+    private static void appendThrowable(StringBuilder sb, Throwable thrown, StackTraceElement[] enclosing,
+                                        String caption, String prefix, Set<Throwable> seen) {
+        if (!seen.add(thrown)) {
+            sb.append(prefix).append(caption).append("[CIRCULAR REFERENCE: ").append(thrown).append("]\n");
+            return;
+        }
+        StackTraceElement[] trace = thrown.getStackTrace();
+        // Frames in common with the enclosing trace are not repeated
+        int m = trace.length - 1;
+        int n = enclosing.length - 1;
+        while (m >= 0 && n >= 0 && trace[m].equals(enclosing[n])) {
+            m--;
+            n--;
+        }
+        int inCommon = trace.length - 1 - m;
+
+        sb.append(prefix).append(caption).append(thrown).append('\n');
+        for (int i = 0; i <= m; i++) {
+            sb.append(prefix).append("\tat ").append(trace[i]).append('\n');
+        }
+        if (inCommon != 0) {
+            sb.append(prefix).append("\t... ").append(inCommon).append(" more\n");
+        }
+        for (Throwable suppressed : thrown.getSuppressed()) {
+            appendThrowable(sb, suppressed, trace, "Suppressed: ", prefix + "\t", seen);
+        }
+        if (thrown.getCause() != null) {
+            appendThrowable(sb, thrown.getCause(), trace, "Caused by: ", prefix, seen);
         }
-        return sb.toString();
     }
 }
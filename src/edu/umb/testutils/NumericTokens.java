@@ -0,0 +1,144 @@
+package edu.umb.testutils;
+
+/**
+ * Compares text while allowing decimal numbers in it to differ by a small tolerance.
+ *
+ * When each text is a single number, as in a short output or a returned String, the two
+ * are compared by value within {@link #TOLERANCE}, as Double.parseDouble would read them, so
+ * "1" and "1.0" or "+5" and "5" match. Otherwise both texts are scanned once, side by side.
+ * Wherever both sides have a decimal number (one with a decimal point or an exponent) at the
+ * same position, the two numbers are compared by value within the tolerance. Integers inside
+ * longer text, and everything else including whitespace, have to match exactly, so IDs and
+ * counts in a listing are never rounded. Numbers are recognized by scanning, so no exceptions
+ * are thrown for text that is not numeric.
+ *
+ * @author James Michaud
+ */
+final class NumericTokens {
+    static final double TOLERANCE = 0.005;
+
+    private NumericTokens() { /* no-op */ }
+
+    /* Compares the texts, either as two single numbers or token by token. */
+    static boolean matchesWithin(String expect, String actual) {
+        return matches(expect, 0, expect.length(), actual, 0, actual.length())
+                || matchesNumber(expect, actual);
+    }
+
+    /**
+     * Compares two values that are each a single number, integer or decimal, ignoring
+     * surrounding whitespace and allowing a leading plus sign, the same way
+     * {@link Double#parseDouble(String)} would. Returns false for anything else.
+     */
+    static boolean matchesNumber(String expect, String actual) {
+        String e = expect.strip();
+        String a = actual.strip();
+        if (!isSignedNumber(e) || !isSignedNumber(a)) return false;
+        return withinTolerance(Double.parseDouble(e), Double.parseDouble(a));
+    }
+
+    static boolean isNumber(String str) {
+        return !str.isEmpty() && numberEnd(str, 0, 0, str.length()) == str.length();
+    }
+
+    private static boolean isSignedNumber(String str) {
+        int from = str.startsWith("+") ? 1 : 0;
+        return str.length() > from && numberEnd(str, from, from, str.length()) == str.length();
+    }
+
+    private static boolean withinTolerance(double e, double a) {
+        return Double.compare(e, a) == 0 || Math.abs(e - a) <= TOLERANCE;
+    }
+
+    /* Compares expect[eFrom, eTo) against actual[aFrom, aTo). */
+    static boolean matches(String expect, int eFrom, int eTo, String actual, int aFrom, int aTo) {
+        int i = eFrom;
+        int j = aFrom;
+        while (i < eTo && j < aTo) {
+            int eEnd = numberEnd(expect, eFrom, i, eTo);
+            int aEnd = eEnd < 0 ? -1 : numberEnd(actual, aFrom, j, aTo);
+            if (aEnd >= 0) {
+                if (eEnd - i != aEnd - j || !expect.regionMatches(i, actual, j, eEnd - i)) {
+                    if (!isDecimal(expect, i, eEnd) || !isDecimal(actual, j, aEnd)) return false;
+                    double e = Double.parseDouble(expect.substring(i, eEnd));
+                    double a = Double.parseDouble(actual.substring(j, aEnd));
+                    if (!withinTolerance(e, a)) return false;
+                }
+                i = eEnd;
+                j = aEnd;
+            } else {
+                if (expect.charAt(i) != actual.charAt(j)) return false;
+                i++;
+                j++;
+            }
+        }
+        return i == eTo && j == aTo;
+    }
+
+    /**
+     * Returns the end of the number starting at index i, or -1 if there is none. A number is
+     * an optional minus sign, digits with an optional decimal point, and an optional exponent.
+     * A plus sign is left as text, so it has to match exactly. It
+     * must not directly follow a letter, digit or decimal point, so "x2" or "1.2.3" are not
+     * split into numbers.
+     */
+    static int numberEnd(String str, int from, int i, int to) {
+        if (i > from) {
+            char prev = str.charAt(i - 1);
+            if (Character.isLetterOrDigit(prev) || prev == '.') return -1;
+        }
+        int k = i;
+        if (k < to && str.charAt(k) == '-') k++;
+        int digits = 0;
+        while (k < to && isDigit(str.charAt(k))) {
+            k++;
+            digits++;
+        }
+        if (k < to && str.charAt(k) == '.') {
+            k++;
+            while (k < to && isDigit(str.charAt(k))) {
+                k++;
+                digits++;
+            }
+        }
+        if (digits == 0) return -1;
+        if (k < to && (str.charAt(k) == 'e' || str.charAt(k) == 'E')) {
+            int exp = k + 1;
+            if (exp < to && (str.charAt(exp) == '-' || str.charAt(exp) == '+')) exp++;
+            int expDigits = exp;
+            while (exp < to && isDigit(str.charAt(exp))) exp++;
+            if (exp > expDigits) k = exp;
+        }
+        return k;
+    }
+
+    /* Returns whether the number in str[from, to) has a decimal point or an exponent. */
+    private static boolean isDecimal(String str, int from, int to) {
+        for (int k = from; k < to; k++) {
+            char c = str.charAt(k);
+            if (c == '.' || c == 'e' || c == 'E') return true;
+        }
+        return false;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /* Returns the end of the line starting at index i, not counting its line terminator. */
+    static int lineEnd(String str, int i) {
+        while (i < str.length() && str.charAt(i) != '\n' && str.charAt(i) != '\r') i++;
+        return i;
+    }
+
+    /* Returns the start of the line after the one ending at index end. */
+    static int nextLine(String str, int end) {
+        if (end < str.length() && str.charAt(end) == '\r') {
+            end++;
+            if (end < str.length() && str.charAt(end) == '\n') end++;
+        } else if (end < str.length() && str.charAt(end) == '\n') {
+            end++;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,258 @@
+package edu.umb.testutils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Produces a bounded, side-by-side diff of two outputs, line by line.
+ *
+ * Lines are matched using the linear-space version of Myers' diff algorithm. Only the lines
+ * around each differing hunk are rendered, and the rendering stops once it reaches a fixed
+ * size, so the feedback stays small no matter how large the outputs are. The diff itself is
+ * limited to a window of lines following the first difference.
+ *
+ * @author James Michaud
+ */
+final class OutputDiff {
+    static final int CONTEXT = 3;           // Unchanged lines shown around each hunk
+    static final int MAX_HUNKS = 8;         // Hunks rendered before giving up
+    static final int MAX_CHARS = 6000;      // Size of the rendered diff before truncation
+    static final int MAX_LINE = 100;        // Longer lines are cut to this length
+    static final int WINDOW = 2000;         // Lines compared on each side after the first difference
+
+    private final int[] a;                  // Expected lines, as ids
+    private final int[] b;                  // Actual lines, as ids
+    private final boolean[] changedA;
+    private final boolean[] changedB;
+    private int[] vf;
+    private int[] vb;
+
+    private OutputDiff(int[] a, int[] b) {
+        this.a = a;
+        this.b = b;
+        changedA = new boolean[a.length];
+        changedB = new boolean[b.length];
+    }
+
+    /**
+     * Renders the differences between the expected and actual lines.
+     *
+     * @param expect the expected lines
+     * @param actual the actual lines
+     * @return the rendered diff, at most about {@link #MAX_CHARS} characters long
+     */
+    static String render(List<String> expect, List<String> actual) {
+        int n = expect.size();
+        int m = actual.size();
+        int prefix = 0;
+        while (prefix < n && prefix < m && expect.get(prefix).equals(actual.get(prefix))) prefix++;
+        int suffix = 0;
+        while (suffix < n - prefix && suffix < m - prefix
+                && expect.get(n - 1 - suffix).equals(actual.get(m - 1 - suffix))) suffix++;
+        if (prefix == n && prefix == m) return "";
+
+        // Compare a window after the first difference. The common suffix is only useful
+        // when the whole middle section fits inside the window.
+        int endA = Math.min(n - suffix, prefix + WINDOW);
+        int endB = Math.min(m - suffix, prefix + WINDOW);
+        boolean complete = endA == n - suffix && endB == m - suffix;
+
+        HashMap<String, Integer> ids = new HashMap<>();
+        int[] a = new int[endA - prefix];
+        int[] b = new int[endB - prefix];
+        for (int i = 0; i < a.length; i++) a[i] = ids.computeIfAbsent(expect.get(prefix + i), k -> ids.size());
+        for (int j = 0; j < b.length; j++) b[j] = ids.computeIfAbsent(actual.get(prefix + j), k -> ids.size());
+
+        OutputDiff diff = new OutputDiff(a, b);
+        int max = (a.length + b.length + 1) / 2 + 2;
+        diff.vf = new int[2 * max + 2];
+        diff.vb = new int[2 * max + 2];
+        diff.diff(0, a.length, 0, b.length);
+
+        // Build the rows: expected index, actual index (-1 when absent)
+        List<int[]> rows = new ArrayList<>();
+        for (int i = Math.max(0, prefix - CONTEXT); i < prefix; i++) rows.add(new int[]{i, i, 0});
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            if (i < a.length && j < b.length && !diff.changedA[i] && !diff.changedB[j]) {
+                rows.add(new int[]{prefix + i++, prefix + j++, 0});
+                continue;
+            }
+            int startI = i;
+            int startJ = j;
+            while (i < a.length && diff.changedA[i]) i++;
+            while (j < b.length && diff.changedB[j]) j++;
+            if (i == startI && j == startJ) {           // Ran out of lines on one side
+                if (i < a.length) diff.changedA[i] = true;
+                else              diff.changedB[j] = true;
+                continue;
+            }
+            for (int k = 0; k < Math.max(i - startI, j - startJ); k++) {
+                int e = startI + k < i ? prefix + startI + k : -1;
+                int r = startJ + k < j ? prefix + startJ + k : -1;
+                rows.add(new int[]{e, r, 1});
+            }
+        }
+        int skippedA = 0;
+        int skippedB = 0;
+        if (complete) {
+            for (int k = 0; k < Math.min(CONTEXT, suffix); k++) {
+                rows.add(new int[]{n - suffix + k, m - suffix + k, 0});
+            }
+        } else {
+            // Changes after the last matching line may only be due to the window cutting
+            // the two sides at different places, so they are reported as not compared.
+            int last = rows.size() - 1;
+            while (last >= 0 && rows.get(last)[2] == 1) last--;
+            int lastA = last < 0 ? prefix - 1 : rows.get(last)[0];
+            int lastB = last < 0 ? prefix - 1 : rows.get(last)[1];
+            if (last >= 0 && lastA >= prefix) rows.subList(last + 1, rows.size()).clear();
+            else {
+                lastA = endA - 1;
+                lastB = endB - 1;
+            }
+            skippedA = n - lastA - 1;
+            skippedB = m - lastB - 1;
+        }
+        return format(rows, expect, actual, skippedA, skippedB);
+    }
+
+    private static String format(List<int[]> rows, List<String> expect, List<String> actual,
+                                 int skippedA, int skippedB) {
+        // Only rows within CONTEXT of a change are shown
+        boolean[] shown = new boolean[rows.size()];
+        for (int r = 0; r < rows.size(); r++) {
+            if (rows.get(r)[2] == 1) {
+                for (int k = Math.max(0, r - CONTEXT); k <= Math.min(rows.size() - 1, r + CONTEXT); k++) {
+                    shown[k] = true;
+                }
+            }
+        }
+        int width = "Expected Output".length();
+        for (int r = 0; r < rows.size(); r++) {
+            if (shown[r] && rows.get(r)[0] >= 0) {
+                width = Math.max(width, displayed(expect.get(rows.get(r)[0])).length());
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("\n Line   %-" + width + "s | %s\n", "Expected Output", "Actual Output"));
+        int hunks = 0;
+        boolean gap = false;
+        for (int r = 0; r < rows.size(); r++) {
+            if (!shown[r]) {
+                gap = true;
+                continue;
+            }
+            if (gap || r == 0) {
+                if (++hunks > MAX_HUNKS) {
+                    sb.append("  ... further differences omitted\n");
+                    return sb.toString();
+                }
+                if (gap) sb.append("  ...\n");
+                gap = false;
+            }
+            int[] row = rows.get(r);
+            String e = row[0] < 0 ? "" : displayed(expect.get(row[0]));
+            String a = row[1] < 0 ? "" : displayed(actual.get(row[1]));
+            String marker = row[2] == 0 ? " " : row[0] < 0 ? "+" : row[1] < 0 ? "-" : "|";
+            sb.append(String.format("%5d %s %-" + width + "s | %s\n",
+                    row[0] >= 0 ? row[0] : row[1], marker, e, a));
+            if (sb.length() > MAX_CHARS) {
+                sb.append("  ... diff truncated due to length\n");
+                return sb.toString();
+            }
+        }
+        if (gap && rows.size() > 0 && !shown[rows.size() - 1]) sb.append("  ...\n");
+        if (skippedA > 0 || skippedB > 0) {
+            sb.append(String.format("  ... %d expected and %d actual lines were not compared\n",
+                    skippedA, skippedB));
+        }
+        return sb.toString();
+    }
+
+    private static String displayed(String line) {
+        line = line.replace("\t", "    ");
+        return line.length() > MAX_LINE ? line.substring(0, MAX_LINE) + "..." : line;
+    }
+
+    /* ****************************************************************************************** */
+    /* Linear-space Myers diff */
+    /* ****************************************************************************************** */
+
+    private void diff(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo++;
+            bLo++;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi--;
+            bHi--;
+        }
+        if (aLo == aHi) {
+            for (int j = bLo; j < bHi; j++) changedB[j] = true;
+        } else if (bLo == bHi) {
+            for (int i = aLo; i < aHi; i++) changedA[i] = true;
+        } else {
+            int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+            if ((snake[0] == aLo && snake[1] == bLo && snake[2] == aHi && snake[3] == bHi)
+                    || (snake[0] == snake[2] && snake[0] == aLo && snake[1] == bLo)) {
+                // No progress possible. Treat the whole section as changed.
+                for (int i = aLo; i < aHi; i++) changedA[i] = true;
+                for (int j = bLo; j < bHi; j++) changedB[j] = true;
+                return;
+            }
+            diff(aLo, snake[0], bLo, snake[1]);
+            diff(snake[2], aHi, snake[3], bHi);
+        }
+    }
+
+    // Returns {startX, startY, endX, endY} of the middle snake, in absolute positions
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        int offset = max + 1;
+        vf[offset + 1] = 0;
+        vb[offset + 1] = 0;
+        for (int d = 0; d <= max; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = (k == -d || (k != d && vf[offset + k - 1] < vf[offset + k + 1]))
+                        ? vf[offset + k + 1] : vf[offset + k - 1] + 1;
+                int y = x - k;
+                int startX = x;
+                int startY = y;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x++;
+                    y++;
+                }
+                vf[offset + k] = x;
+                int c = delta - k;
+                if (odd && c >= -(d - 1) && c <= d - 1 && x + vb[offset + c] >= n) {
+                    return new int[]{aLo + startX, bLo + startY, aLo + x, bLo + y};
+                }
+            }
+            for (int c = -d; c <= d; c += 2) {
+                int x = (c == -d || (c != d && vb[offset + c - 1] < vb[offset + c + 1]))
+                        ? vb[offset + c + 1] : vb[offset + c - 1] + 1;
+                int y = x - c;
+                int startX = x;
+                int startY = y;
+                while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x++;
+                    y++;
+                }
+                vb[offset + c] = x;
+                int k = delta - c;
+                if (!odd && k >= -d && k <= d && x + vf[offset + k] >= n) {
+                    return new int[]{aHi - x, bHi - y, aHi - startX, bHi - startY};
+                }
+            }
+        }
+        return new int[]{aLo, bLo, aHi, bHi};
+    }
+}
@@ -0,0 +1,104 @@
+package edu.umb.testutils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntFunction;
+
+/**
+ * Finds the first index at which two large sequences differ, using the common fork/join pool.
+ *
+ * The index range is split into chunks that are checked in parallel. The result is always the
+ * lowest differing index, the same as a sequential scan would return. Sequences that are too
+ * small to benefit are scanned on the calling thread. So are sequences holding anything other
+ * than JDK value types, because submission code must only run on the test thread, under the
+ * test's timeout.
+ *
+ * @author James Michaud
+ */
+final class ParallelMismatch {
+    static final int PRIMITIVE_CHUNK = 1 << 18;     // Primitive elements checked per task
+    static final int OBJECT_CHUNK = 1 << 12;        // Elements per task when comparing by toString
+
+    /* Returns the first differing index in [from, to), or -1 if there is none */
+    @FunctionalInterface
+    interface RangeCheck {
+        int mismatch(int from, int to);
+    }
+
+    private ParallelMismatch() { /* no-op */ }
+
+    private static final class Task extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+        private final RangeCheck check;
+        private final int from;
+        private final int to;
+        private final int chunk;
+
+        private Task(RangeCheck check, int from, int to, int chunk) {
+            this.check = check;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (to - from <= chunk) return check.mismatch(from, to);
+            int mid = (from + to) >>> 1;
+            Task right = new Task(check, mid, to, chunk);
+            right.fork();
+            int left = new Task(check, from, mid, chunk).compute();
+            int rightResult = right.join();
+            return left >= 0 ? left : rightResult;
+        }
+    }
+
+    /**
+     * Returns the first index at which the sequences differ, or -1 if they are equal. When one
+     * sequence is a prefix of the other, the shorter length is returned.
+     */
+    static int mismatch(int expectLength, int actualLength, RangeCheck check, int chunk) {
+        return mismatch(expectLength, actualLength, check, chunk, true);
+    }
+
+    private static int mismatch(int expectLength, int actualLength, RangeCheck check, int chunk,
+                                boolean parallel) {
+        int length = Math.min(expectLength, actualLength);
+        int found = !parallel || length <= 4 * chunk ? check.mismatch(0, length)
+                : ForkJoinPool.commonPool().invoke(new Task(check, 0, length, chunk));
+        if (found >= 0) return found;
+        return expectLength == actualLength ? -1 : length;
+    }
+
+    /* Arrays of the same primitive type */
+    static int primitives(Object expect, Object actual) {
+        return mismatch(PrimitiveArrays.length(expect), PrimitiveArrays.length(actual),
+                (from, to) -> PrimitiveArrays.mismatch(expect, actual, from, to), PRIMITIVE_CHUNK);
+    }
+
+    /*
+     * Element i of each side is compared by its string form. The elements are checked in
+     * parallel only if every one of them is a JDK value type, whose toString() is not
+     * submission code.
+     */
+    static int byString(int expectLength, int actualLength,
+                        IntFunction<?> expect, IntFunction<?> actual) {
+        int length = Math.min(expectLength, actualLength);
+        boolean parallel = length > 4 * OBJECT_CHUNK;
+        for (int i = 0; parallel && i < length; i++) {
+            parallel = isValueType(expect.apply(i)) && isValueType(actual.apply(i));
+        }
+        return mismatch(expectLength, actualLength, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                if (!String.valueOf(expect.apply(i)).equals(String.valueOf(actual.apply(i)))) return i;
+            }
+            return -1;
+        }, OBJECT_CHUNK, parallel);
+    }
+
+    private static boolean isValueType(Object obj) {
+        return obj == null || obj instanceof String || obj instanceof Character
+                || obj instanceof Boolean
+                || (obj instanceof Number && obj.getClass().getClassLoader() == null);
+    }
+}
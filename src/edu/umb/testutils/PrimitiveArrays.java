@@ -0,0 +1,99 @@
+package edu.umb.testutils;
+
+import java.util.Arrays;
+
+/**
+ * Compares and renders arrays of primitives without boxing their elements.
+ *
+ * @author James Michaud
+ */
+final class PrimitiveArrays {
+    private PrimitiveArrays() { /* no-op */ }
+
+    static boolean isPrimitiveArray(Object obj) {
+        return obj != null && obj.getClass().isArray() && obj.getClass().getComponentType().isPrimitive();
+    }
+
+    /**
+     * Returns the index of the first element that differs between two arrays of the same
+     * primitive type, or -1 if they are equal. If one array is a prefix of the other, the
+     * length of the shorter one is returned. Doubles and floats are compared exactly, the
+     * same way their string forms would compare.
+     */
+    static int mismatch(Object a, Object b) {
+        if (a instanceof int[])     return Arrays.mismatch((int[]) a,     (int[]) b);
+        if (a instanceof double[])  return Arrays.mismatch((double[]) a,  (double[]) b);
+        if (a instanceof long[])    return Arrays.mismatch((long[]) a,    (long[]) b);
+        if (a instanceof char[])    return Arrays.mismatch((char[]) a,    (char[]) b);
+        if (a instanceof boolean[]) return Arrays.mismatch((boolean[]) a, (boolean[]) b);
+        if (a instanceof byte[])    return Arrays.mismatch((byte[]) a,    (byte[]) b);
+        if (a instanceof short[])   return Arrays.mismatch((short[]) a,   (short[]) b);
+        if (a instanceof float[])   return Arrays.mismatch((float[]) a,   (float[]) b);
+        throw new IllegalArgumentException("Not a primitive array: " + a.getClass());
+    }
+
+    /* Returns the first index in [from, to) at which the arrays differ, or -1 if there is none. */
+    static int mismatch(Object a, Object b, int from, int to) {
+        int found;
+        if      (a instanceof int[])     found = Arrays.mismatch((int[]) a, from, to,     (int[]) b, from, to);
+        else if (a instanceof double[])  found = Arrays.mismatch((double[]) a, from, to,  (double[]) b, from, to);
+        else if (a instanceof long[])    found = Arrays.mismatch((long[]) a, from, to,    (long[]) b, from, to);
+        else if (a instanceof char[])    found = Arrays.mismatch((char[]) a, from, to,    (char[]) b, from, to);
+        else if (a instanceof boolean[]) found = Arrays.mismatch((boolean[]) a, from, to, (boolean[]) b, from, to);
+        else if (a instanceof byte[])    found = Arrays.mismatch((byte[]) a, from, to,    (byte[]) b, from, to);
+        else if (a instanceof short[])   found = Arrays.mismatch((short[]) a, from, to,   (short[]) b, from, to);
+        else if (a instanceof float[])   found = Arrays.mismatch((float[]) a, from, to,   (float[]) b, from, to);
+        else throw new IllegalArgumentException("Not a primitive array: " + a.getClass());
+        return found < 0 ? -1 : from + found;
+    }
+
+    static int length(Object array) {
+        return java.lang.reflect.Array.getLength(array);
+    }
+
+    /* Appends the element at index i. */
+    static void appendElement(StringBuilder sb, Object array, int i) {
+        if      (array instanceof int[])     sb.append(((int[]) array)[i]);
+        else if (array instanceof double[])  sb.append(((double[]) array)[i]);
+        else if (array instanceof long[])    sb.append(((long[]) array)[i]);
+        else if (array instanceof char[])    sb.append('\'').append(((char[]) array)[i]).append('\'');
+        else if (array instanceof boolean[]) sb.append(((boolean[]) array)[i]);
+        else if (array instanceof byte[])    sb.append(((byte[]) array)[i]);
+        else if (array instanceof short[])   sb.append(((short[]) array)[i]);
+        else if (array instanceof float[])   sb.append(((float[]) array)[i]);
+    }
+
+    /**
+     * Renders the elements of the array separated by ", ", without brackets. Rendering stops
+     * once the text is longer than maxChars, in which case " ..." is appended.
+     */
+    static String render(Object array, int maxChars) {
+        StringBuilder sb = new StringBuilder();
+        int length = length(array);
+        for (int i = 0; i < length; i++) {
+            if (i > 0) sb.append(", ");
+            if (sb.length() > maxChars) {
+                sb.append("...");
+                break;
+            }
+            appendElement(sb, array, i);
+        }
+        return sb.toString();
+    }
+
+    /* Renders the elements within radius of index, labelled with their indices. */
+    static String window(Object array, int index, int radius) {
+        StringBuilder sb = new StringBuilder();
+        int length = length(array);
+        int from = Math.max(0, index - radius);
+        int to = Math.min(length, index + radius + 1);
+        if (from > 0) sb.append("... ");
+        for (int i = from; i < to; i++) {
+            sb.append('[').append(i).append("]=");
+            appendElement(sb, array, i);
+            if (i < to - 1) sb.append(", ");
+        }
+        if (to < length) sb.append(" ...");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,99 @@
+package edu.umb.testutils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.function.IntFunction;
+
+/**
+ * The results of a run, indexed by test number, with the score totals and the points of each
+ * category kept up to date as results are recorded.
+ *
+ * Test numbers are handed out in sequence from 1, so results are kept in an array that grows
+ * as needed. Lookups do not lock. Creating a result and recording it are safe from several
+ * threads at once, and categories are always listed in the order of their lowest test number,
+ * whatever order the tests finish in.
+ *
+ * @author James Michaud
+ */
+final class ResultStore {
+    private final Object lock = new Object();
+    private volatile AtomicReferenceArray<TestResult> slots;    // Replaced under lock to grow
+    private final DoubleAdder score = new DoubleAdder();
+    private final DoubleAdder maxScore = new DoubleAdder();
+    private final ConcurrentHashMap<String, Category> categories = new ConcurrentHashMap<>();
+
+    private static final class Category {
+        final LongAccumulator firstTest = new LongAccumulator(Math::min, Long.MAX_VALUE);
+        final DoubleAdder points = new DoubleAdder();
+    }
+
+    ResultStore(int expectedTests) {
+        slots = new AtomicReferenceArray<>(expectedTests + 1);
+    }
+
+    /* Returns the result for the test, creating it the first time it is asked for */
+    TestResult computeIfAbsent(int number, IntFunction<TestResult> create) {
+        AtomicReferenceArray<TestResult> current = slots;
+        if (number < current.length()) {
+            TestResult result = current.get(number);
+            if (result != null) return result;
+        }
+        synchronized (lock) {
+            current = slots;
+            if (number >= current.length()) {
+                AtomicReferenceArray<TestResult> grown =
+                        new AtomicReferenceArray<>(Math.max(number + 1, current.length() * 2));
+                for (int i = 0; i < current.length(); i++) grown.set(i, current.get(i));
+                slots = current = grown;
+            }
+            TestResult result = current.get(number);
+            if (result == null) {
+                result = create.apply(number);
+                current.set(number, result);
+            }
+            return result;
+        }
+    }
+
+    /* Adds a finished result to the totals and to the points of its category */
+    void record(TestResult result, String category) {
+        score.add(result.getScore());
+        maxScore.add(result.getMaxScore());
+        Category sums = categories.computeIfAbsent(category, c -> new Category());
+        sums.firstTest.accumulate(result.getNumber());
+        sums.points.add(result.getMaxScore());
+        result.setRecorded();
+    }
+
+    /* Returns the recorded results, in test number order */
+    List<TestResult> recorded() {
+        AtomicReferenceArray<TestResult> current = slots;
+        List<TestResult> answer = new ArrayList<>();
+        for (int i = 0; i < current.length(); i++) {
+            TestResult result = current.get(i);
+            if (result != null && result.isRecorded()) answer.add(result);
+        }
+        return answer;
+    }
+
+    double getScore()    { return score.sum(); }
+    double getMaxScore() { return maxScore.sum(); }
+
+    /* Returns the points of each category, in the order of each category's first test */
+    LinkedHashMap<String, Double> categoryPoints() {
+        List<Map.Entry<String, Category>> entries = new ArrayList<>(categories.entrySet());
+        entries.sort(Comparator.comparingLong(entry -> entry.getValue().firstTest.get()));
+        LinkedHashMap<String, Double> points = new LinkedHashMap<>();
+        for (Map.Entry<String, Category> entry : entries) {
+            points.put(entry.getKey(), entry.getValue().points.sum());
+        }
+        return points;
+    }
+}
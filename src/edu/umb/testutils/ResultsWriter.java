@@ -0,0 +1,255 @@
+package edu.umb.testutils;
+
+import com.github.cliftonlabs.json_simple.JsonException;
+import com.github.cliftonlabs.json_simple.JsonObject;
+import com.github.cliftonlabs.json_simple.Jsoner;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * Writes test results to disk as each test finishes, then assembles results.json from them.
+ *
+ * Each finished {@link TestResult} is appended as a single line of JSON to a journal file
+ * and flushed immediately. The first line of the journal holds the scores needed to scale
+ * the total. When all tests are done, results.json is streamed from the {@link ResultStore},
+ * in test number order, using the store's score totals, and the journal is deleted. If the
+ * run dies early (out of memory, crash, or JVM exit), results.json is still written from the
+ * results recorded so far. If the JVM is killed before it can do that, the journal is left
+ * behind, and running this class afterwards, for example from the autograder's run script,
+ * builds results.json from it.
+ *
+ * @author James Michaud
+ */
+final class ResultsWriter {
+    private static final Logger logger = Logger.getLogger(ResultsWriter.class.getName());
+    private static final String resultsPath = "/autograder/results/results.json";
+    private static final String journalPath = "/autograder/results/results.partial";
+    private static final String endedMessage = "Grading ended unexpectedly. "
+            + "Tests that did not finish received a score of 0.";
+
+    private static Writer journal;
+    private static JsonWriter journalJson;
+    private static boolean journalStarted;      // Has the first line been written?
+    private static boolean finished;
+    private static String error;
+    private static ResultStore results;
+    private static long startTime;
+
+    /* Writes the entries of the tests, separated by commas. Returns false if there were none */
+    @FunctionalInterface
+    private interface Entries {
+        boolean writeTo(Writer out) throws IOException;
+    }
+
+    private ResultsWriter() { /* no-op */ }
+
+    /**
+     * Builds results.json from the journal of a run whose JVM was killed before it could
+     * write the file. Does nothing if the run got as far as writing it, since the journal is
+     * deleted then.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        recover();
+    }
+
+    static synchronized void start(ResultStore store) {
+        results = store;
+        error = null;
+        finished = false;
+        journalStarted = false;
+        startTime = System.currentTimeMillis();
+        try {
+            journal = new OutputStreamWriter(new BufferedOutputStream(
+                    new FileOutputStream(journalPath)), StandardCharsets.UTF_8);
+            journalJson = new JsonWriter(journal);
+        } catch (IOException e) {
+            logger.warning(String.format("Could not open %s: %s", journalPath, e));
+            journal = null;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            synchronized (ResultsWriter.class) {
+                if (!finished && finishEarly(error != null ? error : endedMessage)) {
+                    deleteJournal();
+                }
+            }
+        }));
+    }
+
+    static synchronized void add(TestResult result) {
+        if (journal == null) return;
+        try {
+            if (!journalStarted) {
+                // Written with the first result, once the test class has set its scores
+                double possible = 0;
+                for (Test test : TestFactory.getTests()) possible += test.getMaxScore();
+                journalJson.beginObject()
+                        .field("max_test_score", TestUtils.getMaxTestScore())
+                        .field("possible_score", possible)
+                        .endObject();
+                journalJson.flush();
+                journal.write('\n');
+                journalStarted = true;
+            }
+            result.writeJSON(journalJson);
+            journalJson.flush();
+            journal.write('\n');
+            journal.flush();
+        } catch (IOException e) {
+            logger.warning(String.format("Could not journal result %s: %s", result.getName(), e));
+        }
+    }
+
+    /**
+     * Writes the final results.json once all tests are done.
+     *
+     * @param leaderboard the leaderboard entries
+     */
+    static synchronized void finish(String leaderboard) {
+        if (write(results.getScore(), results.getMaxScore(), TestUtils.getMaxTestScore(),
+                System.currentTimeMillis() - startTime, ResultsWriter::writeRecorded, null,
+                leaderboard)) {
+            deleteJournal();
+        }
+        finished = true;
+    }
+
+    /**
+     * Writes results.json using the results of all tests finished so far. Tests that did not
+     * finish count as 0 points, and the given message is added as an extra 0 point test. A
+     * later call to {@link #finish(String)} replaces the file.
+     *
+     * @param message the message explaining why grading did not finish
+     * @return whether results.json was written
+     */
+    static synchronized boolean finishEarly(String message) {
+        error = message;
+        double possible = 0;
+        for (Test test : TestFactory.getTests()) possible += test.getMaxScore();
+        return write(results.getScore(), Math.max(possible, results.getMaxScore()),
+                TestUtils.getMaxTestScore(), System.currentTimeMillis() - startTime,
+                ResultsWriter::writeRecorded, message, null);
+    }
+
+    /* Writes results.json from the journal, in test number order */
+    static synchronized void recover() {
+        Path path = Paths.get(journalPath);
+        if (!Files.exists(path)) return;
+        double maxTestScore = -1;
+        double possible = 0;
+        long elapsed;
+        TreeMap<Integer, String> lines = new TreeMap<>();
+        TreeMap<Integer, double[]> points = new TreeMap<>();   // number -> {score, max score}
+        try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            BasicFileAttributes times = Files.readAttributes(path, BasicFileAttributes.class);
+            elapsed = times.lastModifiedTime().toMillis() - times.creationTime().toMillis();
+            String line;
+            while ((line = in.readLine()) != null) {
+                try {
+                    JsonObject entry = (JsonObject) Jsoner.deserialize(line);
+                    if (entry.containsKey("max_test_score")) {
+                        maxTestScore = ((Number) entry.get("max_test_score")).doubleValue();
+                        possible = ((Number) entry.get("possible_score")).doubleValue();
+                    } else {
+                        int number = Integer.parseInt((String) entry.get("number"));
+                        points.put(number, new double[]{((Number) entry.get("score")).doubleValue(),
+                                ((Number) entry.get("max_score")).doubleValue()});
+                        lines.put(number, line);
+                    }
+                } catch (JsonException | RuntimeException e) {
+                    // A line cut off by the crash is left out
+                }
+            }
+        } catch (IOException e) {
+            logger.warning(String.format("Could not read %s: %s", journalPath, e));
+            return;
+        }
+        if (maxTestScore < 0) maxTestScore = TestUtils.getMaxTestScore();
+        double score = 0;
+        double maxScore = 0;
+        for (double[] p : points.values()) {
+            score += p[0];
+            maxScore += p[1];
+        }
+        logger.info(String.format("Recovered %d results from %s", lines.size(), journalPath));
+        write(score, Math.max(possible, maxScore), maxTestScore, Math.max(0, elapsed), out -> {
+            boolean first = true;
+            for (String line : lines.values()) {
+                if (!first) out.write(',');
+                out.write(line);
+                first = false;
+            }
+            return !first;
+        }, endedMessage, null);
+    }
+
+    private static boolean writeRecorded(Writer out) throws IOException {
+        boolean first = true;
+        JsonWriter json = new JsonWriter(out);
+        for (TestResult result : results.recorded()) {
+            if (!first) out.write(',');
+            result.writeJSON(json);
+            json.flush();
+            first = false;
+        }
+        return !first;
+    }
+
+    private static void deleteJournal() {
+        try {
+            if (journal != null) journal.close();
+            journal = null;
+            Files.deleteIfExists(Paths.get(journalPath));
+        } catch (IOException e) {
+            logger.warning(String.format("Could not delete %s: %s", journalPath, e));
+        }
+    }
+
+    private static boolean write(double score, double possibleScore, double maxTestScore,
+                                 long elapsed, Entries entries, String errorMessage,
+                                 String leaderboard) {
+        if (journal != null) {
+            try {
+                journal.flush();
+            } catch (IOException e) {
+                // Whatever was flushed before is still used
+            }
+        }
+        double normalized = possibleScore == 0 ? 0 : (score / possibleScore) * maxTestScore;
+
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(resultsPath), StandardCharsets.UTF_8))) {
+            out.write(String.format("{\"score\": %.2f,\"execution_time\": %d,\"tests\": [",
+                    normalized, elapsed));
+            boolean first = !entries.writeTo(out);
+            if (errorMessage != null) {
+                if (!first) out.write(',');
+                JsonWriter json = new JsonWriter(out);
+                json.beginObject()
+                        .field("name", "Error")
+                        .field("score", 0.0)
+                        .field("visibility", "visible")
+                        .field("output", errorMessage)
+                        .endObject();
+                json.flush();
+            }
+            out.write(']');
+            if (leaderboard != null) {
+                out.write(String.format(",\"leaderboard\": [%s]", leaderboard));
+            }
+            out.write("}\n");
+            return true;
+        } catch (IOException e) {
+            logger.warning(String.format("Could not write %s: %s", resultsPath, e));
+            return false;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package edu.umb.testutils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Runs Checkstyle inside the grading JVM instead of starting a new JVM for every style test.
+ *
+ * The Checkstyle and lift jars are loaded once, from the same place the check_style script
+ * uses, and the configuration (checkstyle.xml with its suppressions) is parsed once. The
+ * configured checker is then reused for every file. Checkstyle is not on the compile
+ * classpath, so its API is called through reflection. If it cannot be loaded, {@link #check}
+ * returns null and the caller falls back to the check_style script.
+ *
+ * @author James Michaud
+ */
+final class StyleChecker {
+    private static final Logger logger = Logger.getLogger(StyleChecker.class.getName());
+    private static final String PACKAGE = "com.puppycrawl.tools.checkstyle.";
+
+    private static boolean loaded;                  // Has loading been attempted?
+    private static Object checker;                  // The configured Checker, or null
+    private static Method process;
+    private static ByteArrayOutputStream output;    // Where the checker's logger writes
+
+    private StyleChecker() { /* no-op */ }
+
+    /**
+     * Checks the file and returns the same output the check_style script prints for it.
+     *
+     * @param path the path of the .java file to check
+     * @return the audit output, or null if Checkstyle could not be loaded
+     */
+    static synchronized String check(String path) {
+        if (!loaded) {
+            loaded = true;
+            load();
+        }
+        if (checker == null) return null;
+        output.reset();
+        StringBuilder message = new StringBuilder(path).append(":\n");
+        try {
+            process.invoke(checker, Collections.singletonList(new File(path)));
+            message.append(output.toString(StandardCharsets.UTF_8));
+        } catch (ReflectiveOperationException e) {
+            message.append(output.toString(StandardCharsets.UTF_8));
+            message.append(TestUtils.getRootCause(e).getMessage());
+        }
+        return message.toString();
+    }
+
+    private static void load() {
+        String home = System.getenv("HOME");
+        try {
+            URLClassLoader loader = new URLClassLoader(new URL[]{
+                    new File(home, "lib/checkstyle-lift.jar").toURI().toURL(),
+                    new File(home, "lib/checkstyle-8.21-all.jar").toURI().toURL()},
+                    StyleChecker.class.getClassLoader());
+            Class<?> resolverClass = loader.loadClass(PACKAGE + "PropertyResolver");
+            Class<?> configClass = loader.loadClass(PACKAGE + "api.Configuration");
+            Class<?> listenerClass = loader.loadClass(PACKAGE + "api.AuditListener");
+            Class<?> optionsClass = loader.loadClass(PACKAGE + "api.AutomaticBean$OutputStreamOptions");
+
+            // The same properties the script passes with -D
+            Properties properties = new Properties();
+            properties.setProperty("basedir", home);
+            properties.setProperty("suppressions", home + "/lib/checkstyle-suppressions.xml");
+            Object resolver = loader.loadClass(PACKAGE + "PropertiesExpander")
+                    .getConstructor(Properties.class).newInstance(properties);
+            Object config = loader.loadClass(PACKAGE + "ConfigurationLoader")
+                    .getMethod("loadConfiguration", String.class, resolverClass)
+                    .invoke(null, home + "/lib/checkstyle.xml", resolver);
+
+            Class<?> checkerClass = loader.loadClass(PACKAGE + "Checker");
+            Object newChecker = checkerClass.getConstructor().newInstance();
+            checkerClass.getMethod("setModuleClassLoader", ClassLoader.class).invoke(newChecker, loader);
+            checkerClass.getMethod("configure", configClass).invoke(newChecker, config);
+
+            // The logger is kept open between files, so its output can be read after each one
+            ByteArrayOutputStream newOutput = new ByteArrayOutputStream();
+            Object none = optionsClass.getField("NONE").get(null);
+            Object auditLogger = loader.loadClass(PACKAGE + "DefaultLogger")
+                    .getConstructor(OutputStream.class, optionsClass)
+                    .newInstance(newOutput, none);
+            checkerClass.getMethod("addListener", listenerClass).invoke(newChecker, auditLogger);
+
+            process = checkerClass.getMethod("process", List.class);
+            output = newOutput;
+            checker = newChecker;
+            logger.info("Running Checkstyle in process");
+        } catch (ReflectiveOperationException | IOException | LinkageError e) {
+            logger.warning(String.format("Could not load Checkstyle, using check_style instead: %s",
+                    TestUtils.getRootCause(e)));
+        }
+    }
+}
@@ -7,7 +7,9 @@ import stdlib.StdRandom;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.logging.Logger;
 
 @ExtendWith(TestListener.class)
@@ -24,10 +26,11 @@ public class Template {
     void startTest(Test test) {
         String messageToListener = String.format("%s", test.getNumber());
         TestListener.receiveMessage(messageToListener);
+        TraceRecorder.testStart(test.getNumber());
         String methodName = test.getMethodName();
 
 //        System.err.printf("Starting test %d on %s\n", test.getNumber(), methodName);
-        logger.fine(String.format("Starting test %d on %s", test.getNumber(),
+        logger.fine(() -> String.format("Starting test %d on %s", test.getNumber(),
                 methodName == null ? test.getTestType() : methodName));
 
         int seedMod = StdRandom.uniform(1, 100000);
@@ -62,12 +65,24 @@ public class Template {
             Method actualMethod = TestUtils.getMethod(test.getActualClass(), "main", (Object) aArgs);
             assert expectMethod != null;
             assert actualMethod != null;
-            if (test.seedIsSet()) StdRandom.setSeed(test.getSeed() + seedMod);
-            if (test.getStdInput() != null) TestUtils.setIn(test.getStdInput());
-            String expect = TestUtils.callMethodCaptureStdOut(null, expectMethod, (Object) eArgs);
+            String expect = GoldenArchive.lookupOutput(test);
+            long[] expectFingerprint = expect == null ? GoldenArchive.lookupOutputFingerprint(test) : null;
+            if (expect == null && expectFingerprint == null) {
+                if (test.seedIsSet()) StdRandom.setSeed(test.getSeed() + seedMod);
+                if (test.getStdInput() != null) TestUtils.setIn(test.getStdInput());
+                expect = TestUtils.callMethodCaptureStdOut(null, expectMethod, (Object) eArgs);
+                GoldenArchive.recordOutput(test, expect);
+            }
             if (test.seedIsSet()) StdRandom.setSeed(test.getSeed() + seedMod);
             if (test.getStdInput() != null) TestUtils.setIn(test.getStdInput());
             String actual = TestUtils.callMethodCaptureStdOut(null, actualMethod, (Object) aArgs);
+            if (expectFingerprint != null) {
+                test.addResults("results omitted", "to save space");
+                if (new Fingerprint().update(actual).matches(expectFingerprint)) return;
+                // Different output. Run the solution to show the differences.
+                if (test.getStdInput() != null) TestUtils.setIn(test.getStdInput());
+                expect = TestUtils.callMethodCaptureStdOut(null, expectMethod, (Object) eArgs);
+            }
             if (expect.length() < 500) test.addResults(expect, actual);
             else test.addResults("results omitted", "to save space");
             TestUtils.compareStdOut(expect, actual, test.getHint());
@@ -86,9 +101,29 @@ public class Template {
             } else if (test.getTestType() == TestType.ITERATOR) {
                 logger.finer("Iterator test.");
                 if (actualObj instanceof Iterable) {
-                    if (test.seedIsSet()) StdRandom.setSeed(test.getSeed() + seedMod);
-                    if (test.getStdInput() != null) TestUtils.setIn(test.getStdInput());
-                    Iterator<?> expectIter = ((Iterable<?>) expectObj).iterator();
+                    Iterator<?> expectIter;
+                    List<String> archived = GoldenArchive.lookupSequence(test);
+                    long[] expectFingerprint = archived == null ? GoldenArchive.lookupSequenceFingerprint(test) : null;
+                    if (expectFingerprint != null) {
+                        if (test.getStdInput() != null) TestUtils.setIn(test.getStdInput());
+                        // One value past the stored length is enough to tell the sequences apart
+                        if (TestUtils.fingerprintSequence((Iterable<?>) actualObj, expectFingerprint[1] + 1)
+                                .matches(expectFingerprint)) return;
+                        // Different sequence. Fall through and compare against the solution.
+                    }
+                    if (archived != null) {
+                        expectIter = archived.iterator();
+                    } else {
+                        if (test.seedIsSet()) StdRandom.setSeed(test.getSeed() + seedMod);
+                        if (test.getStdInput() != null) TestUtils.setIn(test.getStdInput());
+                        expectIter = ((Iterable<?>) expectObj).iterator();
+                        if (GoldenArchive.isRecording()) {
+                            List<String> sequence = new ArrayList<>();
+                            expectIter.forEachRemaining(item -> sequence.add(String.valueOf(item)));
+                            GoldenArchive.recordSequence(test, sequence);
+                            expectIter = sequence.iterator();
+                        }
+                    }
                     if (test.seedIsSet()) StdRandom.setSeed(test.getSeed() + seedMod);
                     if (test.getStdInput() != null) TestUtils.setIn(test.getStdInput());
                     logger.finer("Calling actualObj.iterator()");
@@ -107,19 +142,35 @@ public class Template {
                 assert actualMethod != null;
 
                 if (test.getTestType() == TestType.STDOUT) {
-                    if (test.seedIsSet()) StdRandom.setSeed(test.getSeed() + seedMod);
-                    if (test.getStdInput() != null) TestUtils.setIn(test.getStdInput());
-                    String expect = TestUtils.callMethodCaptureStdOut(expectObj, expectMethod, expectArgs);
+                    String expect = GoldenArchive.lookupOutput(test);
+                    long[] expectFingerprint = expect == null ? GoldenArchive.lookupOutputFingerprint(test) : null;
+                    if (expect == null && expectFingerprint == null) {
+                        if (test.seedIsSet()) StdRandom.setSeed(test.getSeed() + seedMod);
+                        if (test.getStdInput() != null) TestUtils.setIn(test.getStdInput());
+                        expect = TestUtils.callMethodCaptureStdOut(expectObj, expectMethod, expectArgs);
+                        GoldenArchive.recordOutput(test, expect);
+                    }
                     if (test.seedIsSet()) StdRandom.setSeed(test.getSeed() + seedMod);
                     if (test.getStdInput() != null) TestUtils.setIn(test.getStdInput());
                     String actual = TestUtils.callMethodCaptureStdOut(actualObj, actualMethod, actualArgs);
+                    if (expectFingerprint != null) {
+                        test.addResults("results omitted", "to save space");
+                        if (new Fingerprint().update(actual).matches(expectFingerprint)) return;
+                        // Different output. Run the solution to show the differences.
+                        if (test.getStdInput() != null) TestUtils.setIn(test.getStdInput());
+                        expect = TestUtils.callMethodCaptureStdOut(expectObj, expectMethod, expectArgs);
+                    }
                     if (expect.length() < 100) test.addResults(expect, actual);
                     else test.addResults("results omitted", "to save space");
                     TestUtils.compareStdOut(expect, actual, test.getHint());
                 } else if (test.getTestType() == TestType.RETURN) {
-                    if (test.seedIsSet()) StdRandom.setSeed(test.getSeed() + seedMod);
-                    if (test.getStdInput() != null) TestUtils.setIn(test.getStdInput());
-                    Object expect = TestUtils.callMethodAndReturn(expectObj, expectMethod, expectArgs);
+                    Object expect = GoldenArchive.lookupValue(test);
+                    if (expect == GoldenArchive.MISSING) {
+                        if (test.seedIsSet()) StdRandom.setSeed(test.getSeed() + seedMod);
+                        if (test.getStdInput() != null) TestUtils.setIn(test.getStdInput());
+                        expect = TestUtils.callMethodAndReturn(expectObj, expectMethod, expectArgs);
+                        GoldenArchive.recordValue(test, expect);
+                    }
                     if (test.seedIsSet()) StdRandom.setSeed(test.getSeed() + seedMod);
                     if (test.getStdInput() != null) TestUtils.setIn(test.getStdInput());
                     Object actual = null;
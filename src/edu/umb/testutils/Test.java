@@ -1,11 +1,11 @@
 package edu.umb.testutils;
 
-import java.io.BufferedReader;
-import java.io.StringReader;
-import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.List;
 
 public final class Test {
+    private static final int MAX_RESULT_LENGTH = 3000;    // Longer results are omitted
+    private static final String OMITTED = "Omitted due to length";
+
     private final String name;                    // The display name to be used for this test
     private final String className;               // The name of the class to be tested
     private final Class<?> expectClass;           // The solution's class to be tested
@@ -26,8 +26,10 @@ public final class Test {
     private final String stdInput;                // File to be used as standard input
     private final Class<? extends Throwable> exceptionType; // The type of exception to be thrown
     private final boolean iterableOrderMatters;
+    private final boolean sharesInstances;        // Are the class instances set up for several tests?
 
-    private String description;                   // The test description to be provided
+    private final Description description;        // The test description to be provided
+    private Description.Part results;             // The expected and actual results, if any
     private int number;                           // The number of this test
 
     Test(String name, String className, Class<?> expectClass, Class<?> actualClass,
@@ -35,9 +37,9 @@ public final class Test {
          Object actualClassInstance,
          String methodName, Object[] methodArgs,
          Class<? extends Throwable> exceptionType,
-         String exceptionMessage, String description, String hint,
+         String exceptionMessage, Description description, String hint,
          TestType type, double maxScore, String failedMessage, long seed, boolean seedIsSet,
-         String stdInput, boolean iterableOrderMatters) {
+         String stdInput, boolean iterableOrderMatters, boolean sharesInstances) {
         this.name = name;
         this.className = className;
         this.expectClass = expectClass;
@@ -59,6 +61,7 @@ public final class Test {
         this.seedIsSet = seedIsSet;
         this.stdInput = stdInput;
         this.iterableOrderMatters = iterableOrderMatters;
+        this.sharesInstances = sharesInstances;
     }
 
     /* ****************************************************************************************** */
@@ -78,7 +81,7 @@ public final class Test {
     public String   getMethodName()          { return methodName;            }
     public Object[] getMethodArgs()          { return methodArgs;            }
     public String   getExceptionMessage()    { return exceptionMessage;      }
-    public String   getDescription()         { return description;           }
+    public String   getDescription()         { return description.toString(); }
     public String   getHint()                { return hint;                  }
     public TestType getTestType()            { return testType;              }
     public double   getMaxScore()            { return maxScore;              }
@@ -88,31 +91,70 @@ public final class Test {
     public boolean  seedIsSet()              { return seedIsSet;             }
     public String   getStdInput()            { return stdInput;              }
     public boolean  iterableOrderMatters()   { return iterableOrderMatters;  }
+    public boolean  sharesInstances()        { return sharesInstances;       }
     public Class<? extends Throwable> getExceptionType() { return exceptionType; }
 
+    Description getDescriptionParts() { return description; }
+
+    /* Returns the results added by addResults(), if any, and releases them from this test. */
+    Description.Part takeResults() {
+        Description.Part taken = results;
+        results = null;
+        return taken;
+    }
+
     void addResults(Object expect, Object actual) {
-        String eString = TestUtils.obj2StringNoAdditions(expect);
-        String aString = TestUtils.obj2StringNoAdditions(actual);
-        if (eString.length() > 3000) eString = "Omitted due to length";
-        if (aString.length() > 3000) aString = "Omitted due to length";
-        long newlines = eString.chars().filter(ch -> ch == '\n').count();
-        long spaces = eString.chars().filter(ch -> ch == ' ').count();
-        long maxLine = Arrays.stream(eString.split("\n")).map(String::length)
-                .max(Integer::compareTo).orElse(0);
-        if ((newlines > 3 && (eString.length()/newlines < 4 || newlines > spaces/2 || maxLine < 35))
+        if (TestUtils.isImmutable(expect) && TestUtils.isImmutable(actual)) {
+            results = (sb, brief) -> renderResults(sb, brief, expect, actual,
+                    render(expect), render(actual));
+        } else {
+            // Rendered now, before anything run later can change the values
+            BoundedText eText = render(expect);
+            BoundedText aText = render(actual);
+            results = (sb, brief) -> renderResults(sb, brief, expect, actual, eText, aText);
+        }
+    }
+
+    // Values are rendered no further than the display limit, collecting the layout
+    // statistics as they go
+    private static BoundedText render(Object value) {
+        BoundedText text = new BoundedText(MAX_RESULT_LENGTH);
+        TestUtils.appendNoAdditions(text, value);
+        return text;
+    }
+
+    private static void renderResults(StringBuilder sb, boolean brief, Object expect, Object actual,
+                                      BoundedText eText, BoundedText aText) {
+        if (brief) {
+            // A passing test only gets a short summary of the values
+            sb.append("\nExpected value: ");
+            Description.appendLimited(sb, quoteString(expect, eText.toString()), true);
+            sb.append("\n  Actual value: ");
+            Description.appendLimited(sb, quoteString(actual, aText.toString()), true);
+            sb.append("\n");
+            return;
+        }
+        int newlines = eText.isFull() ? 0 : eText.newlines();
+        if ((newlines > 3 && (eText.length()/newlines < 4 || newlines > eText.spaces()/2
+                    || eText.maxLine() < 35))
                 || (expect != null && Iterable.class.isAssignableFrom(expect.getClass()))) {
-            LinkedList<String> expectList = TestUtils.string2LineList(eString);
-            LinkedList<String> actualList = TestUtils.string2LineList(aString);
-            description = String.format("%s\n%s", description,
-                    TestUtils.stackOutputSideBySide(expectList, actualList));
+            sb.append("\n").append(TestUtils.stackOutputSideBySide(lines(eText), lines(aText)));
 //        } else if (expect != null && Iterable.class.isAssignableFrom(expect.getClass())) {
 //            // Do nothing (for now)
         } else {
-            description = String.format("%s\nExpected value: %s\n  Actual value: %s\n",
-                    description, quoteString(expect, eString), quoteString(actual, aString));
+            sb.append(String.format("\nExpected value: %s\n  Actual value: %s\n",
+                    quoteString(expect, text(eText)), quoteString(actual, text(aText))));
         }
     }
 
+    private static String text(BoundedText text) {
+        return text.isFull() ? OMITTED : text.toString();
+    }
+
+    private static List<String> lines(BoundedText text) {
+        return text.isFull() ? List.of(OMITTED) : text.lines();
+    }
+
     static String quoteString(Object original, String str) {
         if (original instanceof String) {
             return String.format("\"%s%s\"",
@@ -17,8 +17,8 @@ public class TestBuilder implements PreparedTest, ExceptionMessage,
     }
     // Private constructor to prevent direct instantiation
     private TestBuilder() {
-        descriptionSB   = new StringBuilder();
-        setupSB         = new StringBuilder();
+        descriptionParts = new Description();
+        setupParts       = new Description();
         initialized     = false;
         seedCounter     = 0;
         seedIsSet       = false;
@@ -30,9 +30,9 @@ public class TestBuilder implements PreparedTest, ExceptionMessage,
                     + "method chain to set the arguments before calling twoStepTestFinish().";
             throw new UnpreparedTestException(msg);
         }
-        descriptionSB = new StringBuilder(started.descriptionSB);
-        if (started.setupSB.length() > 0) descriptionSB.append(started.setupSB.toString());
-        setupSB = new StringBuilder();
+        descriptionParts = new Description(started.descriptionParts);
+        if (!started.setupParts.isEmpty()) descriptionParts.append(started.setupParts);
+        setupParts = new Description();
 
         actualClassInstance = started.actualClassInstance;
         expectClassInstance = started.expectClassInstance;
@@ -189,8 +189,8 @@ public class TestBuilder implements PreparedTest, ExceptionMessage,
     /* Instance fields and builder section                                                    */
     /* ************************************************************************************** */
 
-    private final StringBuilder descriptionSB; // Used to generate test descriptions
-    private final StringBuilder setupSB;       // Used to generate test setup descriptions
+    private final Description descriptionParts; // Used to generate test descriptions
+    private final Description setupParts;       // Used to generate test setup descriptions
     private String name;                    // The display name to be used for this test
     private String className;               // The name of the class to be tested
     private Class<?> expectClass;           // The solution's class to be tested
@@ -250,18 +250,19 @@ public class TestBuilder implements PreparedTest, ExceptionMessage,
             if (methodArgs == null)       throw new UnpreparedTestException("method args must be set");
         }
 
-        logger.fine(String.format("Building test for %s.%s", className, methodName));
+        logger.fine(() -> String.format("Building test for %s.%s", className, methodName));
         if (testType != TestType.STYLE) {
             if (!initialized) buildStepOne();
             buildStepTwo();
         }
-        if (description == null) description = descriptionSB.toString();
-        if (note != null)        description = note + "\n\n" + description;
+        Description text = description == null ? descriptionParts
+                : new Description().append(description);
+        if (note != null) text = new Description().append(note).append("\n\n").append(text);
 
         Test test = new Test(name, className, expectClass, actualClass, constructorArgs, fieldName,
                 expectClassInstance, actualClassInstance, methodName, methodArgs, exceptionType,
-                exceptionMessage, description, hint, testType, maxScore, failedMessage,
-                seed, seedIsSet, stdInput, iterableOrderMatters);
+                exceptionMessage, text, hint, testType, maxScore, failedMessage,
+                seed, seedIsSet, stdInput, iterableOrderMatters, initialized);
 
         factory.addTest(test);
         logger.finer("Test built and added to factory.");
@@ -278,7 +279,7 @@ public class TestBuilder implements PreparedTest, ExceptionMessage,
     void setActualClassInstance(Object newInstance) {
         actualClassInstance = newInstance;
         if (newInstance == null) {
-            setupSB.append("Test failed at this step of setup. See message below for more info\n");
+            setupParts.append("Test failed at this step of setup. See message below for more info\n");
             setFailed("\nField instance is null. Did you initialize it correctly?");
         } else {
             actualClass = newInstance.getClass();
@@ -293,7 +294,7 @@ public class TestBuilder implements PreparedTest, ExceptionMessage,
         try {
             setActualClassInstance(((Iterable<?>)actualClassInstance).iterator());
         } catch (Exception e) {
-            setupSB.append("Test failed at this step of setup. See message below for more info\n");
+            setupParts.append("Test failed at this step of setup. See message below for more info\n");
             setFailed("\n" + e.toString());
         }
     }
@@ -350,7 +351,7 @@ public class TestBuilder implements PreparedTest, ExceptionMessage,
         expectClass = TestUtils.getExpectClass(className);
         actualClass = TestUtils.getActualClass(className);
         if (actualClass == null) {
-            descriptionSB.append("\nERR: Test failed due to a problem with the .class file\n");
+            descriptionParts.append("\nERR: Test failed due to a problem with the .class file\n");
             setFailed(TestUtils.getCompileError(className));
         }
         if (constructorArgs != null && constructorArgs.length > 0) {
@@ -368,8 +369,8 @@ public class TestBuilder implements PreparedTest, ExceptionMessage,
             // Don't need class instance
             return;
         }
-        descriptionSB.append("Calling the <").append(className).append("> constructor");
-        descriptionSB.append(" ").append(TestUtils.argArray2String(constructorArgs)).append("\n");
+        descriptionParts.append("Calling the <").append(className).append("> constructor ");
+        descriptionParts.appendArgs(constructorArgs).append("\n");
         if (seedIsSet()) StdRandom.setSeed(seed + seedCounter);
         if (stdInput != null) TestUtils.setIn(stdInput);
         Object[] expectArgs = TestUtils.parseExpectArgs(constructorArgs);
@@ -390,7 +391,7 @@ public class TestBuilder implements PreparedTest, ExceptionMessage,
             System.err.println(limitedTrace.toString());
             String msg = String.format("\n%s was thrown, caused by:\n%s",
                     e.toString(), limitedTrace.toString());
-            descriptionSB.append("\nERR: Test failed due to problem instantiating class\n");
+            descriptionParts.append("\nERR: Test failed due to problem instantiating class\n");
             setFailed(msg);
         } catch (OutOfMemoryError e) {
             TestUtils.handleOutOfMemory(e);
@@ -400,39 +401,39 @@ public class TestBuilder implements PreparedTest, ExceptionMessage,
 
     private void buildStepTwo() {
         if (testType == TestType.FIELD) {
-            descriptionSB.append("Then checking the value of <").append(fieldName).append(">\n");
+            descriptionParts.append("Then checking the value of <").append(fieldName).append(">\n");
         }
         if (testType == TestType.NODE_TREE) {
-            descriptionSB.append("Then checking all values in the subtree rooted at <").append(fieldName).append(">\n");
+            descriptionParts.append("Then checking all values in the subtree rooted at <").append(fieldName).append(">\n");
         }
         if (testType == TestType.RETURN || testType == TestType.STDOUT) {
             boolean rtn = testType == TestType.RETURN;
-            descriptionSB.append("Calling <").append(methodName).append("> ");
-            descriptionSB.append(TestUtils.argArray2String(methodArgs)).append("\n");
-            descriptionSB.append("Then checking ");
-            descriptionSB.append(rtn ? "the returned value\n" : "standard output\n");
+            descriptionParts.append("Calling <").append(methodName).append("> ");
+            descriptionParts.appendArgs(methodArgs).append("\n");
+            descriptionParts.append("Then checking ");
+            descriptionParts.append(rtn ? "the returned value\n" : "standard output\n");
         }
         if (testType == TestType.EXCEPTION_METHOD) {
-            descriptionSB.append("Calling <").append(methodName).append("> ");
-            descriptionSB.append(TestUtils.argArray2String(methodArgs)).append("\n");
-            descriptionSB.append("Then checking that a(n) ").append(exceptionType.getSimpleName());
-            descriptionSB.append("\n is thrown with the message: \"").append(exceptionMessage);
-            descriptionSB.append("\"\n");
+            descriptionParts.append("Calling <").append(methodName).append("> ");
+            descriptionParts.appendArgs(methodArgs).append("\n");
+            descriptionParts.append("Then checking that a(n) ").append(exceptionType.getSimpleName());
+            descriptionParts.append("\n is thrown with the message: \"").append(exceptionMessage);
+            descriptionParts.append("\"\n");
         }
         if (testType == TestType.ITERATOR) {
-            descriptionSB.append("Then comparing its iterator against the solution's iterator\n");
+            descriptionParts.append("Then comparing its iterator against the solution's iterator\n");
         }
         if (testType == TestType.MAIN) {
-            descriptionSB.append("Calling the main method of <").append(className).append(">\n");
-            descriptionSB.append(TestUtils.argArray2String(methodArgs)).append("\n");
-            descriptionSB.append("Then checking standard output against the solution\n");
+            descriptionParts.append("Calling the main method of <").append(className).append(">\n");
+            descriptionParts.appendArgs(methodArgs).append("\n");
+            descriptionParts.append("Then checking standard output against the solution\n");
         }
         if (testType == TestType.EXCEPTION_CONSTRUCTOR) {
-            descriptionSB.append("Calling the <").append(className).append("> constructor");
-            descriptionSB.append(" ").append(TestUtils.argArray2String(constructorArgs)).append("\n");
-            descriptionSB.append("Then checking that a(n) ").append(exceptionType.getSimpleName());
-            descriptionSB.append("\n is thrown with the message: \"").append(exceptionMessage);
-            descriptionSB.append("\"\n");
+            descriptionParts.append("Calling the <").append(className).append("> constructor ");
+            descriptionParts.appendArgs(constructorArgs).append("\n");
+            descriptionParts.append("Then checking that a(n) ").append(exceptionType.getSimpleName());
+            descriptionParts.append("\n is thrown with the message: \"").append(exceptionMessage);
+            descriptionParts.append("\"\n");
         }
     }
 
@@ -441,7 +442,7 @@ public class TestBuilder implements PreparedTest, ExceptionMessage,
     /* ************************************************************************************** */
 
     public PreparedTest usingStdInput(String stdInput) {
-        descriptionSB.append(String.format("Using \"%s\" as standard input\n", stdInput));
+        descriptionParts.append("Using \"").append(stdInput).append("\" as standard input\n");
         this.stdInput = stdInput;
         return this;
     }
@@ -508,37 +509,73 @@ public class TestBuilder implements PreparedTest, ExceptionMessage,
     }
 
     void withArgs(Object... args) {
-        Object[] expectArgs = new Object[args.length];
-        Object[] actualArgs = new Object[args.length];
-        if (args.length == 1 && args[0] instanceof ArgObject) {
-            expectArgs[0] = ((ArgObject)args[0]).getExpectInstance();
-            actualArgs[0] = ((ArgObject)args[0]).getActualInstance();
-        } else {
-            System.arraycopy(args, 0, expectArgs, 0, args.length);
-            System.arraycopy(args, 0, actualArgs, 0, args.length);
-        }
+        Object[] expectArgs = sideArgs(args, true);
+        Object[] actualArgs = sideArgs(args, false);
         Method expect = TestUtils.getMethod(expectClass, tempMethodName, expectArgs);
         Method actual = TestUtils.getMethod(actualClass, tempMethodName, actualArgs);
         assert expect != null;
         assert actual != null;
+        TraceRecorder.setupStep(tempMethodName, 1);
         if (seedIsSet()) StdRandom.setSeed(seed + seedCounter);
         TestUtils.callMethodAndReturn(expectClassInstance, expect, expectArgs);
         if (seedIsSet()) StdRandom.setSeed(seed + seedCounter++);
         try {
             TestUtils.callMethodAndReturn(actualClassInstance, actual, actualArgs);
         } catch (Exception e) {
-            setupSB.append("Test failed at this step of setup. See message below for more info\n");
+            setupParts.append("Test failed at this step of setup. See message below for more info\n");
             setFailed("\n" + e.toString());
         }
     }
 
+    /*
+     * Calls the method once per row of arguments. The methods are looked up once using the
+     * first row, and each side runs all of its calls under one timeout and one seed.
+     */
+    void callMethodBatch(String methodName, Object[][] rows) {
+        if (rows.length == 0) return;
+        Object[][] expectRows = new Object[rows.length][];
+        Object[][] actualRows = new Object[rows.length][];
+        for (int i = 0; i < rows.length; i++) {
+            expectRows[i] = sideArgs(rows[i], true);
+            actualRows[i] = sideArgs(rows[i], false);
+        }
+        Method expect = TestUtils.getMethod(expectClass, methodName, expectRows[0]);
+        Method actual = TestUtils.getMethod(actualClass, methodName, actualRows[0]);
+        assert expect != null;
+        assert actual != null;
+        TraceRecorder.setupStep(methodName, rows.length);
+        if (seedIsSet()) StdRandom.setSeed(seed + seedCounter);
+        TestUtils.callMethodBatch(expectClassInstance, expect, expectRows, new int[1]);
+        if (seedIsSet()) StdRandom.setSeed(seed + seedCounter++);
+        int[] done = {0};
+        try {
+            TestUtils.callMethodBatch(actualClassInstance, actual, actualRows, done);
+        } catch (Exception e) {
+            setupParts.append(String.format("Test failed on call %d of %d at this step of setup. " +
+                    "See message below for more info\n", done[0] + 1, rows.length));
+            setFailed("\n" + e.toString());
+        }
+    }
+
+    // Replaces an ArgObject argument with the solution or submission instance it holds
+    private static Object[] sideArgs(Object[] args, boolean isExpect) {
+        Object[] sideArgs = new Object[args.length];
+        if (args.length == 1 && args[0] instanceof ArgObject) {
+            sideArgs[0] = isExpect ? ((ArgObject)args[0]).getExpectInstance()
+                    : ((ArgObject)args[0]).getActualInstance();
+        } else {
+            System.arraycopy(args, 0, sideArgs, 0, args.length);
+        }
+        return sideArgs;
+    }
+
     void setFieldValue(String fieldName, Object value) {
         if (hasFailed()) return;
         if (className.contains("Node")) {
-            setupSB.append("(").append(value).append(")");
+            setupParts.append("(").append(value).append(")");
         } else {
-            setupSB.append("   Setting <").append(className).append(".").append(fieldName);
-            setupSB.append("> to <").append(value).append(">\n");
+            setupParts.append("   Setting <").append(className).append(".").append(fieldName);
+            setupParts.append("> to <").append(value).append(">\n");
         }
         TestUtils.setFieldValue(expectClassInstance, fieldName, value);
         if (actualClassInstance != null) {
@@ -566,7 +603,7 @@ public class TestBuilder implements PreparedTest, ExceptionMessage,
     public TestFactory.TestSetup initialize() {
         buildStepOne();
         initialized = true;
-        return TestFactory.setup(this, setupSB);
+        return TestFactory.setup(this, setupParts);
     }
 
     static TwoStepTestFinish twoStepTestFinish() {
@@ -10,12 +10,15 @@ import org.junit.platform.launcher.core.LauncherFactory;
 import org.junit.platform.launcher.listeners.SummaryGeneratingListener;
 import org.junit.platform.launcher.listeners.TestExecutionSummary;
 
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.logging.*;
 
@@ -24,7 +27,9 @@ import static org.junit.platform.launcher.EngineFilter.excludeEngines;
 
 public class TestFactory {
     private static final Level loggingLevel = Level.FINER;
+    private static final int LOG_QUEUE_CAPACITY = 8192;
     private static final Logger logger;
+    private static AsyncLogHandler logHandler;
     private static TestFactory instance;
     private final HashMap<Integer, Test> tests;
     private final FactoryProperties props;
@@ -44,10 +49,13 @@ public class TestFactory {
         parent.setLevel(Level.FINEST);
         parent.addHandler(handler);
         try {
-            FileHandler fh = new FileHandler("/autograder/log.txt");
-            fh.setFormatter(formatter);
+            // Records are written to the log file by a background thread, in batches
+            StreamHandler fh = new StreamHandler(new BufferedOutputStream(
+                    new FileOutputStream("/autograder/log.txt")), formatter);
             fh.setLevel(Level.FINEST);
-            parent.addHandler(fh);
+            logHandler = new AsyncLogHandler(fh, LOG_QUEUE_CAPACITY, AsyncLogHandler.DropPolicy.BLOCK);
+            logHandler.setLevel(Level.FINEST);
+            parent.addHandler(logHandler);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -120,6 +128,73 @@ public class TestFactory {
         TestUtils.setMaxTestScore(newMax);
     }
 
+    /**
+     * Runs the solution side of every test as usual and writes its results (return values,
+     * standard output and iterator sequences) to an archive once all tests are done. This
+     * should be run once, against the solution, whenever the tests or the solution change.
+     * Tests using a random seed are never archived.
+     *
+     * @param archivePath the file the archive will be written to
+     * @see TestFactory#useSolutionArchive(String)
+     */
+    public void precomputeSolutions(String archivePath) {
+        GoldenArchive.record(archivePath);
+    }
+
+    /**
+     * Records a compact binary trace of the run: when each test starts and ends, setup steps,
+     * how long each solution and submission call took, and how each comparison went. The
+     * trace can be read with {@link TraceDecoder}. Nothing is recorded unless this is called.
+     *
+     * @param tracePath the file the trace will be written to
+     */
+    public void recordTrace(String tracePath) {
+        TraceRecorder.start(tracePath);
+    }
+
+    /**
+     * Reads solution results from an archive written by
+     * {@link TestFactory#precomputeSolutions(String)}, so that only the submission is invoked
+     * during each test. Tests without an archived result, or whose archived result was recorded
+     * against a different solution .class file, fall back to invoking the solution.
+     *
+     * @param archivePath the archive file to read
+     */
+    public void useSolutionArchive(String archivePath) {
+        GoldenArchive.open(archivePath);
+    }
+
+    /**
+     * Registers a comparator used whenever a returned value or field value of the given class
+     * is compared. The comparator should fail the test using the JUnit assertion methods when
+     * the values differ. Example usage:
+     *
+     * <pre>
+     * {@code
+     * factory.registerComparator("Point2D", (expect, actual, hint, orderMatters) ->
+     *     assertEquals(expect.toString(), actual.toString(), hint));
+     * }
+     * </pre>
+     *
+     * @param className  the simple or fully qualified name of the solution's class
+     * @param comparator the comparator to use for values of that class
+     */
+    public void registerComparator(String className, ValueComparator comparator) {
+        logger.fine(() -> String.format("Registering comparator for %s", className));
+        ComparatorRegistry.register(className, comparator);
+    }
+
+    /**
+     * Sets what happens to log records when the log file writer falls behind and its queue is
+     * full. The default, {@link AsyncLogHandler.DropPolicy#BLOCK}, waits for room so that no
+     * records are lost. The other policies never make the test wait, but may drop records.
+     *
+     * @param policy the policy to use when the log queue is full
+     */
+    public void setLogDropPolicy(AsyncLogHandler.DropPolicy policy) {
+        if (logHandler != null) logHandler.setDropPolicy(policy);
+    }
+
     /* ****************************************************************************************** */
     /* Methods used by the user to build tests */
     /* ****************************************************************************************** */
@@ -298,6 +373,18 @@ public class TestFactory {
     @FunctionalInterface
     public interface TestFunction { void runTest(TestFunctionRunner obj, Object... args); }
 
+    /**
+     * Functional interface used to compare a solution value against a submission value.
+     * Implementations should fail the test (for example, using the JUnit assertion methods)
+     * when the values do not match.
+     *
+     * @see TestFactory#registerComparator(String, ValueComparator)
+     */
+    @FunctionalInterface
+    public interface ValueComparator {
+        void compare(Object expect, Object actual, String hint, boolean iterableOrderMatters);
+    }
+
     public static class TestFunctionRunner {
         private final Test test;
         private Object expectObj;
@@ -391,7 +478,7 @@ public class TestFactory {
     /* Object initialization section */
     /* ****************************************************************************************** */
 
-    static TestSetup setup(TestBuilder test, StringBuilder sb) {
+    static TestSetup setup(TestBuilder test, Description sb) {
         return new TestSetup(test, sb);
     }
 
@@ -432,19 +519,26 @@ public class TestFactory {
     @FunctionalInterface
     public interface SetupFunction { void setup(TestSetup obj, Object... args); }
 
+    /**
+     * Functional interface used to generate the arguments of each call in a batch of setup
+     * calls. See {@link TestSetup#callMethodBatch(String, int, ArgGenerator)}.
+     */
+    @FunctionalInterface
+    public interface ArgGenerator { Object[] args(int callIndex); }
+
     public static class TestSetup implements MethodCall {
         private final TestBuilder builder;
-        private final StringBuilder sb;
+        private final Description sb;
         private int steps;
         private int maxSteps = 24;
-        private HashMap<String, Integer> calls;
+        private LinkedHashMap<String, Integer> calls;
         private boolean usingIterator;
-        private TestSetup(TestBuilder builder, StringBuilder sb) {
+        private TestSetup(TestBuilder builder, Description sb) {
             logger.finer("Object setup will be done using a TestSetup object");
             this.builder = builder;
             this.sb = sb;
             steps = 0;
-            calls = new HashMap<>();
+            calls = new LinkedHashMap<>();
             usingIterator = false;
             if (!builder.hasFailed()) {
                 sb.append("Setting up the class object using the following steps:\n");
@@ -478,27 +572,93 @@ public class TestFactory {
          * @return the object used to chain with a call to withArgs()
          */
         public MethodCall callMethod(String method) {
-            logger.finer(String.format("Setting up class object by calling %s()", method));
+            logger.finer(() -> String.format("Setting up class object by calling %s()", method));
+            if (builder.hasFailed()) {
+                logger.fine(() -> String.format("Could not call %s() as test has already failed.",
+                        method));
+                return this;
+            }
+            if (!countStep(method, 1)) {
+                sb.append("   Calling the <").append(method).append("> method ");
+            }
+            builder.callMethod(method);
+            return this;
+        }
+
+        /**
+         * Calls the given method of the class being tested the given number of times, using
+         * the arguments returned by the generator for each call. The method is looked up once,
+         * all calls run under one timeout, and the test description shows a single line for
+         * the whole batch. Example usage:
+         *
+         * <pre>
+         * {@code
+         * factory.twoStepTestStart().initialize()
+         *         .callMethodBatch("put", 100000, i -> new Object[]{"key" + i, i});
+         * }
+         * </pre>
+         *
+         * @param method the method to be called
+         * @param times the number of calls to make
+         * @param generator returns the arguments of the call with the given index
+         * @return the TestSetup object used to call this method
+         */
+        public TestSetup callMethodBatch(String method, int times, ArgGenerator generator) {
+            Object[][] rows = new Object[times][];
+            for (int i = 0; i < times; i++) rows[i] = generator.args(i);
+            return callMethodBatch(method, rows);
+        }
+
+        /**
+         * Calls the given method of the class being tested once for each row of arguments.
+         * See {@link TestSetup#callMethodBatch(String, int, ArgGenerator)}.
+         *
+         * @param method the method to be called
+         * @param argRows the arguments of each call
+         * @return the TestSetup object used to call this method
+         */
+        public TestSetup callMethodBatch(String method, Object[][] argRows) {
+            logger.finer(() -> String.format("Setting up class object by calling %s() %d times",
+                    method, argRows.length));
             if (builder.hasFailed()) {
-                logger.fine(String.format("Could not call %s() as test has already failed.", method));
+                logger.fine(() -> String.format("Could not call %s() as test has already failed.",
+                        method));
                 return this;
             }
+            if (argRows.length == 0) return this;
+            if (!countStep(method, argRows.length)) {
+                sb.append("   Calling the <").append(method).append("> method ")
+                        .append(argRows.length).append(" times, the first ")
+                        .appendArgs(TestUtils.parseActualArgs(argRows[0])).append("\n");
+            }
+            builder.callMethodBatch(method, argRows);
+            return this;
+        }
+
+        /*
+         * Counts a setup step. Returns true once there are more than maxSteps steps, in which
+         * case the description only lists how often each method was called. The list is
+         * rendered when the description is read, from a copy of the counts taken now, since
+         * tests built earlier keep this version of the description.
+         */
+        private boolean countStep(String method, int times) {
             steps++;
-            calls.put(method, calls.getOrDefault(method, 0)+1);
+            calls.merge(method, times, Integer::sum);
             if (steps > maxSteps) {
-                sb.delete(0, sb.length());
+                LinkedHashMap<String, Integer> counts = new LinkedHashMap<>(calls);
+                sb.clear();
                 sb.append("Setting up the class object using the following steps:\n");
                 if (usingIterator) sb.append("   Retrieving the class's iterator\n");
-                for (Map.Entry<String, Integer> curr : calls.entrySet()) {
-                    sb.append(String.format("   Calling <%s> a total of %s times\n",
-                            curr.getKey(), curr.getValue()));
-                }
-            } else {
-                sb.append("   Calling the <").append(method).append("> method ");
+                sb.append((out, brief) -> {
+                    for (Map.Entry<String, Integer> curr : counts.entrySet()) {
+                        out.append(String.format("   Calling <%s> a total of %s times\n",
+                                curr.getKey(), curr.getValue()));
+                    }
+                });
             }
-            builder.callMethod(method);
-            return this;
+            return steps > maxSteps;
         }
+
         @Override
         public TestSetup withArgs(Object... args) {
             logger.finer("Set up by specifying the arguments (omitted)");
@@ -507,8 +667,7 @@ public class TestFactory {
                 return this;
             }
             if (!(steps > maxSteps)) {
-                String argString = TestUtils.argArray2String(TestUtils.parseActualArgs(args));
-                sb.append(argString).append("\n");
+                sb.appendArgs(TestUtils.parseActualArgs(args)).append("\n");
             }
             builder.withArgs(args);
             return this;
@@ -546,7 +705,7 @@ public class TestFactory {
          * @return the TestSetup object used to call this method
          */
         public TestSetup replaceInstanceWithReturnFromMethod(String methodName, Object... args) {
-            logger.fine(String.format("Replacing current instance with call to %s()", methodName));
+            logger.fine(() -> String.format("Replacing current instance with call to %s()", methodName));
             if (builder.hasFailed()) {
                 logger.fine("Could not replace instance as test has already failed.");
                 return this;
@@ -559,8 +718,7 @@ public class TestFactory {
             Object actualNewObj = TestUtils.callMethodAndReturn(actualObj, actualMethod, args);
             sb.append("   Retrieving the object returned by a call to the <")
                     .append(methodName).append("> method\n    ");
-            String argString = TestUtils.argArray2String(TestUtils.parseActualArgs(args));
-            sb.append(argString).append("\n");
+            sb.appendArgs(TestUtils.parseActualArgs(args)).append("\n");
             builder.setExpectClassInstance(expectNewObj);
             builder.setActualClassInstance(actualNewObj);
             return this;
@@ -573,7 +731,7 @@ public class TestFactory {
          * @return the TestSetup object used to call this method
          */
         public TestSetup replaceInstanceWithField(String fieldName) {
-            logger.fine(String.format("Replacing current instance with field %s", fieldName));
+            logger.fine(() -> String.format("Replacing current instance with field %s", fieldName));
             if (builder.hasFailed()) {
                 logger.fine("Could not replace instance as test has already failed.");
                 return this;
@@ -597,7 +755,7 @@ public class TestFactory {
         }
 
         public TestSetup setFieldValue(String fieldName, Object value) {
-            logger.fine(String.format("Setting field %s to %s", fieldName, value));
+            logger.fine(() -> String.format("Setting field %s to %s", fieldName, value));
             builder.setFieldValue(fieldName, value);
             return this;
         }
@@ -657,7 +815,7 @@ public class TestFactory {
          * @param name the name of any tests prepared using the currently active static fields
          */
         public void name(String name) {
-            logger.finest(String.format("Setting the static test name to %s", name));
+            logger.finest(() -> String.format("Setting the static test name to %s", name));
             TestBuilder.setStaticName(name);
         }
 
@@ -669,7 +827,7 @@ public class TestFactory {
          * @param note the extra message to be added before the test description
          */
         public void note(String note) {
-            logger.finest(String.format("Setting the static test note to %s", note));
+            logger.finest(() -> String.format("Setting the static test note to %s", note));
             TestBuilder.setStaticNote(note);
         }
 
@@ -682,7 +840,7 @@ public class TestFactory {
          * @param seed the seed to use for random number generators.
          */
         public void setRandomSeed(long seed) {
-            logger.finest(String.format("Setting the static test random seed to %d", seed));
+            logger.finest(() -> String.format("Setting the static test random seed to %d", seed));
             TestBuilder.setRandomSeed(seed);
         }
 
@@ -693,7 +851,7 @@ public class TestFactory {
          *                  currently active static fields
          */
         public void className(String className) {
-            logger.finest(String.format("Setting the static class name to %s", className));
+            logger.finest(() -> String.format("Setting the static class name to %s", className));
             TestBuilder.setStaticClassName(className);
         }
 
@@ -715,7 +873,7 @@ public class TestFactory {
          *                   any tests prepared using the currently active static fields
          */
         public void methodName(String methodName) {
-            logger.finest(String.format("Setting the static method name to %s", methodName));
+            logger.finest(() -> String.format("Setting the static method name to %s", methodName));
             TestBuilder.setStaticMethodName(methodName);
         }
 
@@ -736,7 +894,7 @@ public class TestFactory {
          *                 currently active static fields
          */
         public void maxScore(double maxScore) {
-            logger.finest(String.format("Setting the static max score to %.2f", maxScore));
+            logger.finest(() -> String.format("Setting the static max score to %.2f", maxScore));
             TestBuilder.setStaticMaxScore(maxScore);
         }
 
@@ -845,7 +1003,7 @@ public class TestFactory {
          * @param input the file name to be used as standard input
          */
         public void stdIn(String input) {
-            logger.finest(String.format("Setting static standard input to %s", input));
+            logger.finest(() -> String.format("Setting static standard input to %s", input));
             TestBuilder.setStaticStandardIn(input);
         }
 
@@ -855,7 +1013,7 @@ public class TestFactory {
          * @param message the expected exception message that should be included
          */
         public void exceptionMessage(String message) {
-            logger.finest(String.format("Setting static exception message to %s", message));
+            logger.finest(() -> String.format("Setting static exception message to %s", message));
             TestBuilder.setStaticExceptionMessage(message);
         }
 
@@ -865,7 +1023,7 @@ public class TestFactory {
          * @param exceptionType the exceptiont ype that should be thrown
          */
         public void exceptionType(Class<? extends Throwable> exceptionType) {
-            logger.finest(String.format("Setting static expected exception to %s", exceptionType));
+            logger.finest(() -> String.format("Setting static expected exception to %s", exceptionType));
             TestBuilder.setStaticExceptionType(exceptionType);
         }
 
@@ -877,7 +1035,8 @@ public class TestFactory {
          * @param matters whether the order of the iterator matters
          */
         public void iterableOrderMatters(boolean matters) {
-            logger.finest(String.format("Setting static flag iterable order matters to: %s", matters));
+            logger.finest(() -> String.format("Setting static flag iterable order matters to: %s",
+                    matters));
             TestBuilder.setStaticIterableOrderMatters(matters);
         }
     }
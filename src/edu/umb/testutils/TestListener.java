@@ -29,11 +29,7 @@ public class TestListener implements TestWatcher, TestExecutionListener,
     private static String msgFlag;                  // The string that encloses info on the Test
     private static HashMap<Integer, Test> tests;    // Stores tests sent from TestLauncher
     private static TestResult currentTestResult;    // used in beforeEach and afterEach
-    private static List<TestResult> allTestResults;
-    private static PriorityQueue<TestResult> allTestResults2;
-    private static HashMap<Integer, TestResult> allTestResults3;
-    private static LinkedHashMap<String, Double> pointDistribution;
-    private static long startTime;
+    private static ResultStore results;             // Every result, with running totals
     private String testName;
     private static int count;
 
@@ -46,13 +42,13 @@ public class TestListener implements TestWatcher, TestExecutionListener,
     }
 
     public static void setMessageFlag(String flag, HashMap<Integer, Test> tests) {
-        logger.finest(String.format("Setting message flag to %s and linking tests", flag));
+        logger.finest(() -> String.format("Setting message flag to %s and linking tests", flag));
         msgFlag = flag;
         TestListener.tests = tests;
     }
 
     public static void receiveMessage(String message) {
-        logger.finest(String.format("Receiving message: %s", message));
+        logger.finest(() -> String.format("Receiving message: %s", message));
         System.out.print(msgFlag+message+msgFlag);
     }
 
@@ -91,11 +87,8 @@ public class TestListener implements TestWatcher, TestExecutionListener,
             } else {
                 throw new RuntimeException("beforeAll context.getTestClass() is not present");
             }
-            allTestResults = new ArrayList<TestResult>();
-            allTestResults2 = new PriorityQueue<TestResult>();
-            allTestResults3 = new HashMap<Integer, TestResult>();
-            pointDistribution = new LinkedHashMap<>();
-            startTime = System.currentTimeMillis();
+            results = new ResultStore(tests == null ? 0 : tests.size());
+            ResultsWriter.start(results);
         }
     }
 
@@ -107,7 +100,7 @@ public class TestListener implements TestWatcher, TestExecutionListener,
      */
     @Override
     public void beforeEach(ExtensionContext context) {
-        logger.finest(String.format("New test started. Context: %s", context.toString()));
+        logger.finest(() -> String.format("New test started. Context: %s", context.toString()));
         capturedData.reset();
         System.setOut(TESTOUT);
         StdOut.resync();
@@ -134,7 +127,7 @@ public class TestListener implements TestWatcher, TestExecutionListener,
      */
     @Override
     public void handleTestExecutionException(ExtensionContext context, Throwable throwable) throws Throwable {
-        logger.finer(String.format("Exception thrown! Handling %s", throwable.toString()));
+        logger.finer(() -> String.format("Exception thrown! Handling %s", throwable.toString()));
         String output = setCurrentTest();
         currentTestResult.setScore(0);
         if (throwable.getMessage() != null && throwable.getMessage().contains("timed out after")) {
@@ -183,7 +176,7 @@ public class TestListener implements TestWatcher, TestExecutionListener,
      */
     @Override
     public void afterEach(ExtensionContext context) {
-        logger.finest(String.format("Test ended. Context: %s", context.toString()));
+        logger.finest(() -> String.format("Test ended. Context: %s", context.toString()));
         String capturedDataString = setCurrentTest();
 
         if (capturedDataString.length() > 0) {
@@ -203,12 +196,11 @@ public class TestListener implements TestWatcher, TestExecutionListener,
             logger.info(String.format("Testing %s", testName));
         }
 
-        allTestResults.add(currentTestResult);
-        allTestResults2.add(currentTestResult);
         String name = currentTestResult.getName();
-        name = name.contains("Checkstyle") ? "Checkstyle" : name;
-        double total = pointDistribution.getOrDefault(name, 0.0);
-        pointDistribution.put(name, total + currentTestResult.getMaxScore());
+        results.record(currentTestResult, name.contains("Checkstyle") ? "Checkstyle" : name);
+        ResultsWriter.add(currentTestResult);
+        TraceRecorder.testEnd(currentTestResult.getNumber(),
+                currentTestResult.getScore() >= currentTestResult.getMaxScore());
     }
 
     /**
@@ -221,7 +213,7 @@ public class TestListener implements TestWatcher, TestExecutionListener,
      */
     @Override
     public void afterAll(ExtensionContext context) {
-        logger.finest(String.format("All Tests Done. Context: %s", context.toString()));
+        logger.finest(() -> String.format("All Tests Done. Context: %s", context.toString()));
         String thisTestClass;
         if (context.getTestClass().isPresent()) {
             thisTestClass = context.getTestClass().get().getCanonicalName();
@@ -229,38 +221,19 @@ public class TestListener implements TestWatcher, TestExecutionListener,
             throw new RuntimeException("afterAll context.getTestClass() is not present");
         }
         if(thisTestClass.equals(mainTestClass)) {
-            long elapsed = System.currentTimeMillis() - startTime;
-
-            double maxScore = 0.0;
-            double score = 0.0;
-            ArrayList<String> objects = new ArrayList<>();
-            for (TestResult tr : allTestResults2) {
-                objects.add(tr.toJSON());
-                maxScore += tr.getMaxScore();
-                score += tr.getScore();
-            }
-            String testsJSON = String.join(",", objects);
-
-            String output = "{" + String.join(",", new String[] {
-                    String.format("\"score\": %.2f", (score/maxScore)*TestUtils.getMaxTestScore()),
-                    String.format("\"execution_time\": %d", elapsed),
-                    String.format("\"tests\": [%s]", testsJSON),
-                    String.format("\"leaderboard\": [%s]", leaderboard())
-            }) + "}";
+            double maxScore = results.getMaxScore();
+            double score = results.getScore();
+            ResultsWriter.finish(leaderboard());
             System.err.printf("*************\nStudent score: %.2f / %.2f = %.2f\n*************\n",
                     score, maxScore, (score/maxScore)*TestUtils.getMaxTestScore());
-
-            try (PrintWriter tempOut = new PrintWriter("/autograder/results/results.json")) {
-                tempOut.println(output);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+            GoldenArchive.flush();
+            TraceRecorder.finish();
         }
         System.err.println("Point Distribution:");
-        double total = pointDistribution.keySet().stream().mapToDouble(key -> pointDistribution.get(key)).sum();
-
-        for (String key : pointDistribution.keySet()) {
-            double val = pointDistribution.get(key);
+        double total = results.getMaxScore();
+        for (Map.Entry<String, Double> entry : results.categoryPoints().entrySet()) {
+            String key = entry.getKey();
+            double val = entry.getValue();
             System.err.printf("(%5.2f%%) %s: %s\n", (val/total)*100, key, val);
         }
     }
@@ -278,12 +251,8 @@ public class TestListener implements TestWatcher, TestExecutionListener,
             capturedDataString = capturedDataString.replace(cutout,"");
 
             int testNumber = Integer.parseInt(message);
-            currentTestResult = allTestResults3.get(testNumber);
-            if (null == currentTestResult) {
-                Test test = tests.get(testNumber);
-                currentTestResult = new TestResult(testNumber, test);
-                allTestResults3.put(testNumber, currentTestResult);
-            }
+            currentTestResult = results.computeIfAbsent(testNumber,
+                    number -> new TestResult(number, tests.get(number)));
         }
         assert currentTestResult != null;
         return capturedDataString;
@@ -322,14 +291,9 @@ public class TestListener implements TestWatcher, TestExecutionListener,
         double slotCalc = ((double)diff2) / slotSize;
         int slot = (int)slotCalc;
 
-        // Calculate the max/submission scores, based on the number of tests.
-        // TODO: Is this infallible?
-        double maxScore = 0.0;
-        double submissionScore = 0.0;
-        for (TestResult result : allTestResults2) {
-            maxScore += result.getMaxScore();
-            submissionScore += result.getScore();
-        }
+        // The max/submission scores, totalled as each test finished
+        double maxScore = results.getMaxScore();
+        double submissionScore = results.getScore();
 
         // Calculate the leaderboard score. Breakdown:
         // 50% for autograder score
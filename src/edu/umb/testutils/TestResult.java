@@ -1,15 +1,22 @@
 package edu.umb.testutils;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+
 public class TestResult implements Comparable<TestResult> {
     private final String className;
     private final String methodName;
-    private final String description;
+    private final Description description;
+    private Description.Part results;
+    private String renderedDescription;
     private final String hint;
     private final int number;
     private final double maxScore;
     private double score;
     private String name;
     private String visibility;
+    private volatile boolean recorded;          // Has it been added to the ResultStore totals?
 
     /* outputSB builds any text to be given to the student. */
     private StringBuilder sb;
@@ -19,7 +26,8 @@ public class TestResult implements Comparable<TestResult> {
         name = test.getName();
         className = test.getClassName();
         methodName = test.getMethodName();
-        description = test.getDescription();
+        description = test.getDescriptionParts();
+        results = test.takeResults();
         hint = test.getHint();
         maxScore = test.getMaxScore();
         score = maxScore;
@@ -29,37 +37,47 @@ public class TestResult implements Comparable<TestResult> {
 
     void setName(String name)   { this.name = name; }
     void setScore(double score) { this.score = score; }
+    void setRecorded()          { recorded = true; }
 
     double getScore()    { return score; }
     double getMaxScore() { return maxScore; }
     String getName()     { return name; }
+    int getNumber()      { return number; }
+    boolean isRecorded() { return recorded; }
 
     public void insertOutput(int offset, String x)  { sb.insert(offset, x); }
     public void addOutput(String x)                 { sb.append(x); }
 
-    /* Return in JSON format.
-     * TODO: Need to escape newlines and possibly other characters. */
+    /* Return in JSON format. */
     public String toJSON() {
-        String output = description + "\n" + sb.toString();
-        if (output.contains("illegal character: '\\'")) {
-            output = "Stray backslash in your code caused it not to compile.\n"
-                    + "Please review your code and upload again\n";
+        StringWriter out = new StringWriter();
+        try {
+            JsonWriter json = new JsonWriter(out);
+            writeJSON(json);
+            json.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        String noBackslashes = output.replace("'\\'", "'\\\\'");
-        String noWindowsNewLines = noBackslashes.replace("\r\n", "\\n");
-        String noWeirdNewLines = noWindowsNewLines.replace("\r", "\\n");
-        String noLinuxNewLines = noWeirdNewLines.replace("\n", "\\n");
-        String noTabs = noLinuxNewLines.replace("\t", "    ");
-        String noQuotes = noTabs.replace("\"", "\\\"");
+        return out.toString();
+    }
 
-        return "{" + String.join(",", new String[] {
-                String.format("\"%s\": \"%s\"", "name", name),
-                String.format("\"%s\": \"%s\"", "number", number),
-                String.format("\"%s\": %.2f", "score", score),
-                String.format("\"%s\": %.2f", "max_score", maxScore),
-                String.format("\"%s\": \"%s\"", "visibility", visibility),
-                String.format("\"%s\": \"%s\"", "output", noQuotes)
-        }) + "}";
+    /* Writes this result as a JSON object, escaping the output while it is written. */
+    void writeJSON(JsonWriter json) throws IOException {
+        String description = getDescription();
+        String strayBackslash = "illegal character: '\\'";
+        json.beginObject()
+                .field("name", name)
+                .field("number", String.valueOf(number))
+                .field("score", score)
+                .field("max_score", maxScore)
+                .field("visibility", visibility);
+        if (description.contains(strayBackslash) || sb.indexOf(strayBackslash) >= 0) {
+            json.field("output", "Stray backslash in your code caused it not to compile.\n"
+                    + "Please review your code and upload again\n");
+        } else {
+            json.field("output", description, "\n", sb);
+        }
+        json.endObject();
     }
 
     /* For debugging only. */
@@ -68,7 +86,19 @@ public class TestResult implements Comparable<TestResult> {
                 "className: %s, methodName: %s\nDescription: %s\nHint: %s\n" +
                 "detailed output if any (on next line): \n%s";
         return(String.format(str, name, number, score, maxScore, className, methodName,
-                description, hint, sb.toString()));
+                getDescription(), hint, sb.toString()));
+    }
+
+    /* Renders the description once the score is final. Passing tests get the brief version. */
+    private String getDescription() {
+        if (renderedDescription == null) {
+            boolean brief = score >= maxScore;
+            Description full = new Description(description);
+            if (results != null) full.append(results);
+            renderedDescription = full.render(brief);
+            results = null;
+        }
+        return renderedDescription;
     }
 
     public boolean equals(Object that) {
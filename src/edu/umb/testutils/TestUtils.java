@@ -2,7 +2,6 @@ package edu.umb.testutils;
 
 import dsa.BasicST;
 import dsa.OrderedST;
-import dsa.RectHV;
 import org.junit.jupiter.api.function.Executable;
 import stdlib.In;
 import stdlib.StdIn;
@@ -10,11 +9,16 @@ import stdlib.StdOut;
 
 import java.io.*;
 import java.lang.reflect.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -32,6 +36,12 @@ public final class TestUtils {
     private static final Logger logger = Logger.getLogger(TestUtils.class.getName());
     private static double maxTestScore;
 
+    private static final int ARG_LIMIT = 600;          // Longer arguments are omitted
+    private static final int MAX_NODES_SHOWN = 10;     // Longer node lists are summarized
+    // Accessible declared fields of each class, by name
+    private static final ConcurrentHashMap<Class<?>, HashMap<String, Field>> declaredFields =
+            new ConcurrentHashMap<>();
+
     static {
         srcPath = "/autograder/submission/";
         timeout = 15;       // seconds
@@ -80,31 +90,34 @@ public final class TestUtils {
 
     static void testStyle(String className) {
         String fileName = className + (className.contains(".java") ? "" : ".java");
+        String output = StyleChecker.check(srcPath + fileName);
+        if (output == null) output = runCheckStyleScript(fileName);
+        String[] lines = output.split("\n");
+        // if the last line is "Audit done.", style checker passes.
+        String expect = "Audit done.";
+        String actual = lines.length >= 4 ? "See warnings for details."
+                : lines.length > 0 ? lines[lines.length - 1] : "";
+        assertEquals(expect, actual, output);
+    }
+
+    /* Runs the check_style script in a separate JVM and returns everything it printed */
+    private static String runCheckStyleScript(String fileName) {
         // Set up the process and evaluation strings.
         ProcessBuilder pb = new ProcessBuilder();
         String cmd =  "check_style " + srcPath + fileName;
         pb.command("bash", "-c", cmd);
         String line;
-        String prev = "";
-        int lineCounter = 0;
         StringBuilder message = new StringBuilder();
         try {
             Process p = pb.start();
             BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream()));
             while((line = reader.readLine()) != null) {
-                lineCounter++;
-                // Keep track of prev to test "Audit done." at end.
-                prev = line;
-                // Also build the full output in case of exception.
                 message.append(line).append("\n");
             }
         } catch(Exception e) {
             message.append(e.getMessage());
         }
-        // if the last line is "Audit done.", style checker passes.
-        String expect = "Audit done.";
-        String actual = lineCounter < 4 ? prev : "See warnings for details.";
-        assertEquals(expect, actual, message.toString());
+        return message.toString();
     }
 
     static void testFileExistence(String fileName) {
@@ -126,7 +139,7 @@ public final class TestUtils {
     static Class<?> getActualClass(String className) { return loadClass(className, actualLoader); }
 
     static Class<?> loadClass(String className, URLClassLoader loader) {
-        logger.finest(String.format("Loading %s using loader %s", className, loader));
+        logger.finest(() -> String.format("Loading %s using loader %s", className, loader));
         try {
             return loader.loadClass(packageName+className);
         } catch (ClassNotFoundException | NoClassDefFoundError e) {
@@ -160,7 +173,7 @@ public final class TestUtils {
     }
 
     static Object getClassInstance(Class<?> clazz, Object... args) {
-        logger.finest(String.format("Getting instance of %s with constructor args %s",
+        logger.finest(() -> String.format("Getting instance of %s with constructor args %s",
                 clazz.getSimpleName(), Arrays.toString(args)));
         Constructor<?> constructor = getConstructor(clazz, args);
         assert constructor != null;
@@ -329,6 +342,20 @@ public final class TestUtils {
 
     static String callMethodCaptureStdOut(Object object, Method method, Object... args) {
         makeTempOut();
+        long start = TraceRecorder.now();
+        boolean completed = false;
+        try {
+            captureStdOut(object, method, args);
+            completed = true;
+        } finally {
+            traceInvocation(method, start, completed);
+        }
+        String output = getTempOut();
+        if (start != 0) TraceRecorder.output(isExpect(method), output.length());
+        return output;
+    }
+
+    private static void captureStdOut(Object object, Method method, Object... args) {
         assertTimeoutPreemptively(Duration.ofSeconds(timeout), () -> {
             try {
                 method.invoke(object, args);
@@ -340,10 +367,21 @@ public final class TestUtils {
     //                    method.getName(), getRootCause(e)));
             }
         }, "\n__TIMEOUT__\n");
-        return getTempOut();
     }
 
     static Object callMethodAndReturn(Object object, Method method, Object... args) {
+        long start = TraceRecorder.now();
+        boolean completed = false;
+        try {
+            Object answer = invoke(object, method, args);
+            completed = true;
+            return answer;
+        } finally {
+            traceInvocation(method, start, completed);
+        }
+    }
+
+    private static Object invoke(Object object, Method method, Object... args) {
         final Object[] answer = {null};
         assertTimeoutPreemptively(Duration.ofSeconds(timeout), () -> {
             try {
@@ -362,54 +400,131 @@ public final class TestUtils {
         return answer[0];
     }
 
+    /*
+     * Calls the method once for each row of arguments, all under a single timeout. The number
+     * of calls that completed is kept in done[0], so a failure can be traced to its call.
+     */
+    static void callMethodBatch(Object object, Method method, Object[][] rows, int[] done) {
+        long start = TraceRecorder.now();
+        try {
+            assertTimeoutPreemptively(Duration.ofSeconds(timeout), () -> {
+                try {
+                    for (Object[] row : rows) {
+                        method.invoke(object, row);
+                        done[0]++;
+                    }
+                } catch (IllegalAccessException e) {
+                    fail(String.format("\nMethod \"%s\" not accessible.\n", method.getName()));
+                } catch (IllegalArgumentException e) {
+                    // The method was looked up using the first row's arguments
+                    fail(String.format("\nCould not call method \"%s\" (IllegalArgumentException) "
+                            + "with the arguments of call %d: %s\n"
+                            + "Please report this error to the professor or TA\n",
+                            method.getName(), done[0] + 1, argArray2String(rows[done[0]])));
+                } catch (InvocationTargetException e) {
+                    throw (RuntimeException) getRootCause(e);
+                } catch (OutOfMemoryError e) {
+                    handleOutOfMemory(e);
+                    fail("JVM Out of memory. Attempting to dump standard out and resume test");
+                }
+            }, "\n__TIMEOUT__\n");
+        } finally {
+            traceInvocation(method, start, done[0] == rows.length);
+        }
+    }
+
+    private static boolean isExpect(Method method) {
+        return method.getDeclaringClass().getClassLoader() == expectLoader;
+    }
+
+    private static void traceInvocation(Method method, long start, boolean completed) {
+        if (start == 0) return;
+        TraceRecorder.invocation(method.getDeclaringClass().getSimpleName() + "." + method.getName(),
+                isExpect(method), start, completed);
+    }
+
+    /* Runs a comparison, recording how long it took and whether it passed when tracing */
+    private static void traced(String kind, Runnable comparison) {
+        long start = TraceRecorder.now();
+        if (start == 0) {
+            comparison.run();
+            return;
+        }
+        boolean passed = false;
+        try {
+            comparison.run();
+            passed = true;
+        } finally {
+            TraceRecorder.comparison(kind, start, passed);
+        }
+    }
+
+    /*
+     * Fingerprints the values of the submission's iterable under the usual timeout, reading at
+     * most limit values, so an iterator that never ends fails the test instead of hanging.
+     */
+    static Fingerprint fingerprintSequence(Iterable<?> iterable, long limit) {
+        return assertTimeoutPreemptively(Duration.ofSeconds(timeout),
+                () -> Fingerprint.ofSequence(iterable.iterator(), limit), "\n__TIMEOUT__\n");
+    }
+
     static void handleOutOfMemory(OutOfMemoryError e) {
         System.out.close();
         OUT = new ByteArrayOutputStream();
         System.setOut(new PrintStream(OUT));
         StdOut.resync();
-        String msg = "JVM Out of memory. Attempting to dump standard out and resume test";
-        String output = "{" + String.join(",", new String[] {
-                "\"score\": 0.0", "\"execution_time\": 0",
-                String.format("\"tests\": [{\"name\": \"Error, out of memory\",\"score\": 0.0,"
-                        + "\"visibility\": \"visible\",\"output\":\"%s\"}]", msg),
-        }) + "}";
-
-        try (PrintWriter tempOut = new PrintWriter("/autograder/results/results.json")) {
-            tempOut.println(output);
-        } catch (Exception ex) {
-            ex.printStackTrace();
-        }
+        ResultsWriter.finishEarly("JVM Out of memory. Results of the tests that finished "
+                + "before this are kept. Attempting to resume testing");
     }
 
     static void setIn(String filename) {
-        try {
-            File file = new File(filename);
-            System.setIn(new FileInputStream(file));
-            StdIn.resync();
-        } catch (FileNotFoundException e) {
-//            System.err.println("Failed to load input from file. Using string as input");
-            System.setIn(new ByteArrayInputStream(filename.getBytes()));
-            StdIn.resync();
-//            e.printStackTrace();
-        }
+        System.setIn(InputSources.open(filename));
+        StdIn.resync();
     }
 
     static String obj2String(Object obj) {
         return    obj == null              ? "null"
+                : PrimitiveArrays.isPrimitiveArray(obj) ? "[" + PrimitiveArrays.render(obj, 600) + "]"
                 : obj.getClass().isArray() ? "[" + getArgString((Object[]) obj) + "]"
                 : obj instanceof String    ? "\"" + obj + "\""
                 : obj instanceof Character ? "'"  + obj + "'"
                 : obj.toString();
     }
 
-    static String obj2StringNoAdditions(Object obj) {
-        return    obj == null              ? "null"
-                : obj.getClass().isArray() ? "[" + getArgString(toObjectArray(obj)) + "]"
-                : obj instanceof String    ? (String) obj
-                : obj instanceof Character ? "'"  + obj + "'"
-                : Iterable.class.isAssignableFrom(obj.getClass()) ?
-                    "Iterable{\n" + iterable2String((Iterable<?>) obj) + "}"
-                : obj.toString();
+    /* Appends obj to text without quoting strings, stopping once the text is full */
+    static void appendNoAdditions(BoundedText text, Object obj) {
+        if (obj == null) {
+            text.append("null");
+        } else if (PrimitiveArrays.isPrimitiveArray(obj)) {
+            text.append("[");
+            text.append(PrimitiveArrays.render(obj, text.remaining()));
+            text.append("]");
+        } else if (obj.getClass().isArray()) {
+            if (text.append("[") && text.append(renderArgs((Object[]) obj, text.remaining()))) {
+                text.append("]");
+            }
+        } else if (obj instanceof String) {
+            text.append((String) obj);
+        } else if (obj instanceof Character) {
+            text.append("'" + obj + "'");
+        } else if (obj instanceof Iterable) {
+            text.append("Iterable{\n");
+            for (Object o : (Iterable<?>) obj) {
+                if (!text.append("  ") || !text.append(obj2String(o)) || !text.append("\n")) return;
+            }
+            text.append("}");
+        } else {
+            text.append(obj.toString());
+        }
+    }
+
+    /* Returns whether obj's text can never change, so rendering it can wait */
+    static boolean isImmutable(Object obj) {
+        return obj == null || obj instanceof String || obj instanceof Character
+                || obj instanceof Boolean || obj instanceof Integer || obj instanceof Long
+                || obj instanceof Double || obj instanceof Float || obj instanceof Short
+                || obj instanceof Byte || obj instanceof BigInteger
+                || obj instanceof BigDecimal || obj instanceof Enum;
     }
 
     static Object[] toObjectArray(Object obj) {
@@ -432,30 +547,31 @@ public final class TestUtils {
         }
     }
 
-    static String iterable2String(Iterable<?> obj) {
-        StringBuilder sb = new StringBuilder();
-        for (Object o : obj) {
-            sb.append("  ").append(obj2String(o)).append("\n");
-        }
-        return sb.toString();
+    static String getArgString(Object[] array) {
+        return renderArgs(array, Integer.MAX_VALUE);
     }
 
-    static String getArgString(Object[] array) {
+    /*
+     * Renders the arguments separated by commas. Each argument longer than ARG_LIMIT is
+     * replaced by a note. Rendering stops as soon as the text passes limit, so a returned
+     * text longer than limit is only the start of the arguments.
+     */
+    private static String renderArgs(Object[] array, int limit) {
         StringBuilder sb = new StringBuilder();
         for (Object arg : array) {
-            StringBuilder subSB = new StringBuilder();
-            if (arg instanceof Object[]) {
-                subSB.append("[").append(getArgString((Object[]) arg)).append("]");
-            } else if (arg != null && arg.getClass().isArray()) {
-                subSB.append("[").append(getArgString(prim2ObjArray(arg))).append("]");
-            } else if (arg instanceof BuilderFaces.ArgObject) {
-                subSB.append(getArgBuilderString(arg));
+            String rendered = renderArg(arg);
+            if (rendered == null) {
+                sb.append("Argument omitted due to length, ");
             } else {
-                subSB.append(obj2String(arg));
+                int lastLineLength = rendered.length() - rendered.lastIndexOf("\n");
+                String separator = lastLineLength > 55 ? ",\n  " : ", ";
+                if (rendered.length() + separator.length() > ARG_LIMIT) {
+                    sb.append("Argument omitted due to length, ");
+                } else {
+                    sb.append(rendered).append(separator);
+                }
             }
-            int lastLineLength = subSB.length() - subSB.lastIndexOf("\n");
-            subSB.append(lastLineLength > 55 ? ",\n  " : ", ");
-            sb.append(subSB.length() > 600 ? "Argument omitted due to length, " : subSB.toString());
+            if (sb.length() > limit) return sb.toString();
         }
         if (sb.length() > 1) {
             if (sb.charAt(sb.length()-3) == '\n') {
@@ -467,17 +583,20 @@ public final class TestUtils {
         return sb.toString();
     }
 
-    private static Object[] prim2ObjArray(Object arr) {
-        List<Object> list = new ArrayList<Object>();
-        if (arr instanceof int[]    ) for (int curr     : (int[])     arr) list.add(curr);
-        if (arr instanceof double[] ) for (double curr  : (double[])  arr) list.add(curr);
-        if (arr instanceof float[]  ) for (float curr   : (float[])   arr) list.add(curr);
-        if (arr instanceof boolean[]) for (boolean curr : (boolean[]) arr) list.add(curr);
-        if (arr instanceof long[]   ) for (long curr    : (long[])    arr) list.add(curr);
-        if (arr instanceof byte[]   ) for (byte curr    : (byte[])    arr) list.add(curr);
-        if (arr instanceof short[]  ) for (short curr   : (short[])   arr) list.add(curr);
-        if (arr instanceof char[]   ) for (char curr    : (char[])    arr) list.add(curr);
-        return list.toArray();
+    // Returns null when the argument is known to be longer than ARG_LIMIT
+    private static String renderArg(Object arg) {
+        if (arg instanceof Object[]) {
+            String inner = renderArgs((Object[]) arg, ARG_LIMIT);
+            return inner.length() > ARG_LIMIT ? null : "[" + inner + "]";
+        } else if (arg != null && arg.getClass().isArray()) {
+            return "[" + PrimitiveArrays.render(arg, ARG_LIMIT) + "]";
+        } else if (arg instanceof BuilderFaces.ArgObject) {
+            return getArgBuilderString(arg);
+        } else if (arg instanceof String && ((String) arg).length() > ARG_LIMIT) {
+            return null;
+        } else {
+            return obj2String(arg);
+        }
     }
 
     private static String getArgBuilderString(Object arg) {
@@ -485,13 +604,17 @@ public final class TestUtils {
         if (instance != null
                 && instance.getClass().getSimpleName().contains("Node")
                 && hasField(instance, "next")) {
+            // Only as many nodes as can be shown are visited, so long lists cost nothing extra
             int count = 0;
+            Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            seen.add(instance);
             Object curr = instance;
-            while ((curr = getFieldObject(curr, "next")) != null) {
+            while (count <= MAX_NODES_SHOWN && (curr = getFieldObject(curr, "next")) != null) {
+                if (!seen.add(curr)) return "Node list with a cycle";
                 count++;
             }
-            if (count > 10) {
-                return String.format("Node list of %s values", count);
+            if (count > MAX_NODES_SHOWN) {
+                return String.format("Node list of more than %d values", MAX_NODES_SHOWN);
             } else {
                 String valueVariable = hasField(instance, "item") ? "item"
                         : hasField(instance, "value") ? "value"
@@ -554,10 +677,9 @@ public final class TestUtils {
 
     static boolean hasField(Object instance, String fieldName) {
         try {
-            Field field = instance.getClass().getDeclaredField(fieldName);
-            field.setAccessible(true);
-            return (field.get(instance) != null);
-        } catch (NoSuchFieldException | IllegalAccessException e) {
+            Field field = declaredField(instance.getClass(), fieldName);
+            return field != null && field.get(instance) != null;
+        } catch (IllegalAccessException e) {
             return false;
         }
     }
@@ -573,14 +695,29 @@ public final class TestUtils {
 
     static Object getFieldObject(Object instance, String fieldName) {
         try {
-            Field field = instance.getClass().getDeclaredField(fieldName);
-            field.setAccessible(true);
-            return field.get(instance);
-        } catch (NoSuchFieldException | IllegalAccessException e) {
+            Field field = declaredField(instance.getClass(), fieldName);
+            return field == null ? null : field.get(instance);
+        } catch (IllegalAccessException e) {
             return null;
         }
     }
 
+    /* Returns the accessible field declared in clazz with the given name, or null if none */
+    private static Field declaredField(Class<?> clazz, String fieldName) {
+        return declaredFields.computeIfAbsent(clazz, c -> {
+            HashMap<String, Field> byName = new HashMap<>();
+            for (Field field : c.getDeclaredFields()) {
+                try {
+                    field.setAccessible(true);
+                    byName.put(field.getName(), field);
+                } catch (RuntimeException e) {
+                    // Fields of classes in closed modules cannot be read
+                }
+            }
+            return byName;
+        }).get(fieldName);
+    }
+
     static Object getFieldNode(Object instance, String fieldName, String msg) {
         return getFieldObject(instance, fieldName);
     }
@@ -588,8 +725,8 @@ public final class TestUtils {
     static Object getFieldValue(Object instance, String fieldName, String msg) {
         try {
 //            System.err.printf("getting field: %s\n", fieldName);
-            Field field = instance.getClass().getDeclaredField(fieldName);
-            field.setAccessible(true);
+            Field field = declaredField(instance.getClass(), fieldName);
+            if (field == null) throw new NoSuchFieldException(fieldName);
             Object gotten = field.get(instance);
             if (gotten != null && gotten.getClass().getSimpleName().contains("Node")) {
                 String val;
@@ -630,28 +767,51 @@ public final class TestUtils {
         assertEquals(expect, actual, hint);
     }
 
+    /* Compares two iterators element by element, stopping at the first difference. The actual
+     * iterator is never advanced more than one element past the end of the expected one. */
     static void compareIterators(Iterator<?> expectIter, Iterator<?> actualIter, String hint) {
-        StringBuilder expectSB = new StringBuilder();
-        StringBuilder actualSB = new StringBuilder();
+        traced("iterator", () -> compareSequences(expectIter, actualIter, hint));
+    }
+
+    private static void compareSequences(Iterator<?> expectIter, Iterator<?> actualIter, String hint) {
+        final int window = 5;   // Number of matching values shown before a difference
+        ArrayDeque<String> recent = new ArrayDeque<>(window);
+        String msg = String.format("\n%s%s",
+                "Iterator produced unexpected sequence of values\n",
+                "Values compared one at a time against the solution\n");
 
-        logger.finer("Building expected iterator sequence");
+        logger.finer("Comparing iterator sequences");
+        int index = 0;
         while (expectIter.hasNext()) {
-            expectSB.append(expectIter.next()).append("\n");
-        }
-        try {
-            logger.finer("Building actual iterator sequence");
-            while (actualIter.hasNext()) {
-                actualSB.append(actualIter.next()).append("\n");
+            String expect = String.valueOf(expectIter.next());
+            if (!actualIter.hasNext()) {
+                fail(String.format("%sYour iterator ended after %d values. Expected next value: %s\n%s%s",
+                        msg, index, expect, recentValues(recent, index), hint));
             }
-        } catch (OutOfMemoryError e) {
-            fail("Out of memory. Your code may have an infinite loop");
+            String actual = String.valueOf(actualIter.next());
+            if (!expect.equals(actual)) {
+                assertEquals(expect, actual, String.format("%sFirst difference at value %d\n%s%s",
+                        msg, index, recentValues(recent, index), hint));
+            }
+            if (recent.size() == window) recent.removeFirst();
+            recent.addLast(expect);
+            index++;
         }
-        String msg = String.format("\n%s%s\n%s",
-                "Iterator produced unexpected sequence of values\n",
-                "Values printed one per line, then compared against the solution\n", hint);
-        logger.finer("Making comparison");
-        TestUtils.compareStdOut(expectSB.toString(), actualSB.toString(), msg);
+        if (actualIter.hasNext()) {
+            fail(String.format("%sYour iterator produced more than the expected %d values. " +
+                    "First extra value: %s\n%s%s", msg, index, actualIter.next(),
+                    recentValues(recent, index), hint));
+        }
+    }
 
+    private static String recentValues(ArrayDeque<String> recent, int index) {
+        if (recent.isEmpty()) return "";
+        StringBuilder sb = new StringBuilder("Values before the difference (all correct):\n");
+        int i = index - recent.size();
+        for (String value : recent) {
+            sb.append(String.format("%5d | %s\n", i++, value));
+        }
+        return sb.toString();
     }
 
     static void compareValues(Object expect, Object actual, String hint) {
@@ -659,247 +819,281 @@ public final class TestUtils {
     }
 
     static void compareValues(Object expect, Object actual, String hint, boolean iterableOrderMatters) {
-        if (expect == null) {
+        if (expect == null || actual == null) {
             assertEquals(expect, actual, hint);
             return;
         }
-        Class<?> expectClass = expect.getClass();
-        Class<?> actualClass = actual.getClass();
-        if (expectClass == String.class) {
-            try {
-                double expectD = Double.parseDouble((String) expect);
-                double actualD = Double.parseDouble((String) actual);
-//                System.err.println("Attempting to compare strings as doubles for class: " + expectClass);
-                assertEquals(expectD, actualD, 0.005, hint);
-                return;
-            } catch (NumberFormatException e) {
-                // do nothing
-            }
-        }
-        if (expectClass == Double.class || expectClass == Float.class) {
-            assertEquals((double)expect, (double)actual, 0.005, hint);
+        traced(expect.getClass().getSimpleName(), () ->
+                ComparatorRegistry.resolve(expect.getClass(), actual.getClass())
+                        .compare(expect, actual, hint, iterableOrderMatters));
+    }
+
+    /* ---------------------------------------------------------------------- */
+    /* Comparators used by ComparatorRegistry. See ComparatorRegistry#find()  */
+    /* ---------------------------------------------------------------------- */
 
-        } else if (isCommonType(expectClass)) {
+    static void compareStrings(Object expect, Object actual, String hint, boolean orderMatters) {
+        if (actual instanceof String && NumericTokens.matchesNumber((String) expect, (String) actual)) return;
+        assertEquals(expect, actual, hint);
+    }
+
+    static void compareDoubles(Object expect, Object actual, String hint, boolean orderMatters) {
+        if (!(actual instanceof Number)) {
             assertEquals(expect, actual, hint);
+            return;
+        }
+        assertEquals(((Number) expect).doubleValue(), ((Number) actual).doubleValue(), 0.005, hint);
+    }
 
-        } else if (expectClass.isArray()) {
-            Object[] eArray = toObjectArray(expect);
-            Object[] aArray = toObjectArray(actual);
-            // Compare the string representations. If the elements are course class objects,
-            // the solution object will not equal the submission object.
-            if (eArray.length > 0 && eArray[0] != null
-                    && hasMethod(eArray[0], "toString", (Class<?>[]) null)) {
-                for (int i = 0; i < eArray.length; i++) {
-                    String eString = eArray[i] == null ? "null" : eArray[i].toString();
-                    String aString = aArray[i] == null ? "null" : aArray[i].toString();
-                    assertEquals(eString, aString, String.format("\n" +
-                            "Array contents differ at index [%d]\n%s\n", i, hint));
-                }
-            } else {
-                assertArrayEquals((Object[]) expect, (Object[]) actual, hint);
-            }
+    static void compareEquals(Object expect, Object actual, String hint, boolean orderMatters) {
+        assertEquals(expect, actual, hint);
+    }
 
-        // This next condition finds whether expect and actual have the same class name.
-        // This happens when comparing a solution and student object - Example: class Rational
-        } else if (!expectClass.equals(actualClass) &&
-                expectClass.toString().equals(actualClass.toString())) {
-            // We try to get the toString method, which is the best way to test equality
-            try {
-                expectClass.getDeclaredMethod("toString");
-                hint = "\nThis test requires the toString method, so make sure it's working" + hint;
-                assertEquals(expect.toString(), actual.toString(), hint);
-            } catch (NoSuchMethodException e) {
-                // If there's no defined toString method, check each of the object's fields
-                compareFields(expect, actual, hint);
+    static void compareArrays(Object expect, Object actual, String hint, boolean orderMatters) {
+        if (PrimitiveArrays.isPrimitiveArray(expect) && expect.getClass() == actual.getClass()) {
+            comparePrimitiveArrays(expect, actual, hint);
+            return;
+        }
+        Object[] eArray = expect instanceof Object[] ? (Object[]) expect : toObjectArray(expect);
+        Object[] aArray = actual instanceof Object[] ? (Object[]) actual : toObjectArray(actual);
+        // Compare the string representations. If the elements are course class objects,
+        // the solution object will not equal the submission object.
+        if (eArray.length > 0 && eArray[0] != null
+                && hasMethod(eArray[0], "toString", (Class<?>[]) null)) {
+            int i = ParallelMismatch.byString(eArray.length, aArray.length, k -> eArray[k], k -> aArray[k]);
+            if (i < 0) return;
+            if (i < eArray.length && i < aArray.length) {
+                assertEquals(String.valueOf(eArray[i]), String.valueOf(aArray[i]), String.format("\n" +
+                        "Array contents differ at index [%d]\n%s\n", i, hint));
             }
-        } else if (Iterable.class.isAssignableFrom(expectClass)) {
-            if (iterableOrderMatters) {
-                compareIterators(((Iterable<?>) expect).iterator(), ((Iterable<?>) actual).iterator(), hint);
-            } else {
-                LinkedList<String> expectList = iterableToStringList((Iterable<?>) expect);
-                LinkedList<String> actualList = iterableToStringList((Iterable<?>) actual);
-                String sideBySide = stackOutputSideBySide(expectList, actualList);
-                while (!expectList.isEmpty()) {
-                    String curr = expectList.removeFirst();
-                    if (!actualList.remove(curr)) {
-                        fail(String.format("Missing expected value:\n%s\n%s", curr, hint));
-                    }
-                }
-                assertEquals(0, actualList.size(), "Your algorithm produces extra " +
-                        "values.\nHere's the output stacked side-by-side\n" + sideBySide);
+            assertEquals(eArray.length, aArray.length, String.format("\n" +
+                    "Array lengths differ. All of the first %d elements match.\n%s\n", i, hint));
+        } else {
+            assertArrayEquals(eArray, aArray, hint);
+        }
+    }
+
+    /* Compares without boxing, and shows only the elements around the first difference. */
+    private static void comparePrimitiveArrays(Object expect, Object actual, String hint) {
+        int index = ParallelMismatch.primitives(expect, actual);
+        if (index < 0) return;
+        int eLength = PrimitiveArrays.length(expect);
+        int aLength = PrimitiveArrays.length(actual);
+        if (index < eLength && index < aLength) {
+            fail(String.format("\nArray contents differ at index [%d]\nExpected: %s\nActual:   %s\n%s\n",
+                    index, PrimitiveArrays.window(expect, index, 3),
+                    PrimitiveArrays.window(actual, index, 3), hint));
+        }
+        fail(String.format("\nArray lengths differ. Expected %d elements, but found %d. " +
+                        "All of the first %d match.\nExpected: %s\nActual:   %s\n%s\n",
+                eLength, aLength, index, PrimitiveArrays.window(expect, index, 3),
+                PrimitiveArrays.window(actual, index, 3), hint));
+    }
+
+    // Used when expect and actual have the same class name but are different classes.
+    // This happens when comparing a solution and student object - Example: class Rational
+    static void compareByToString(Object expect, Object actual, String hint, boolean orderMatters) {
+        hint = "\nThis test requires the toString method, so make sure it's working" + hint;
+        assertEquals(expect.toString(), actual.toString(), hint);
+    }
+
+    static void compareByFields(Object expect, Object actual, String hint, boolean orderMatters) {
+        compareFields(expect, actual, hint);
+    }
+
+    static void compareIterables(Object expect, Object actual, String hint, boolean orderMatters) {
+        if (orderMatters && isJdkRandomAccessList(expect) && isJdkRandomAccessList(actual)) {
+            List<?> expectList = (List<?>) expect;
+            List<?> actualList = (List<?>) actual;
+            // Large lists are checked in parallel. The sequential walk below builds the feedback.
+            // Only JDK lists are read on other threads, never a list class from a submission.
+            if (ParallelMismatch.byString(expectList.size(), actualList.size(),
+                    expectList::get, actualList::get) < 0) return;
+        }
+        if (orderMatters) {
+            compareIterators(((Iterable<?>) expect).iterator(), ((Iterable<?>) actual).iterator(), hint);
+        } else {
+            compareUnordered((Iterable<?>) expect, (Iterable<?>) actual, hint);
+        }
+    }
+
+    private static boolean isJdkRandomAccessList(Object obj) {
+        return obj instanceof List && obj instanceof RandomAccess
+                && obj.getClass().getModule() == Object.class.getModule();
+    }
+
+    static void compareOrderedSTs(Object expect, Object actual, String hint, boolean orderMatters) {
+        OrderedST expectST = (OrderedST) expect;
+        OrderedST actualST = (OrderedST) actual;
+        compareSTs(expectST.size(), actualST.size(), expectST.keys(), actualST.keys(),
+                key -> actualST.contains((Comparable) key),
+                key -> expectST.get((Comparable) key),
+                key -> actualST.get((Comparable) key), hint);
+    }
+
+    static void compareBasicSTs(Object expect, Object actual, String hint, boolean orderMatters) {
+        BasicST expectST = (BasicST) expect;
+        BasicST actualST = (BasicST) actual;
+        compareSTs(expectST.size(), actualST.size(), expectST.keys(), actualST.keys(),
+                actualST::contains, expectST::get, actualST::get, hint);
+    }
+
+    /*
+     * Compares the keys of two symbol tables by their string forms, position by position, in
+     * parallel for large tables. If the keys come back in a different order, the remaining
+     * actual keys are hashed by their string form and looked up instead, so the comparison
+     * stays linear either way, and any actual keys left over are reported. The value of every
+     * key is then compared through get(). contains() is only checked on a sample of the keys.
+     */
+    private static void compareSTs(int expectSize, int actualSize, Iterable<?> expectKeys,
+                                   Iterable<?> actualKeys, Predicate<Object> actualContains,
+                                   Function<Object, Object> expectGet,
+                                   Function<Object, Object> actualGet, String hint) {
+        final int sampleSize = 256;     // Number of keys also checked with contains()
+        assertEquals(expectSize, actualSize, String.format(
+                "ST sizes do not match\n%s", hint));
+
+        List<Object> expectList = new ArrayList<>(expectSize);
+        List<Object> actualList = new ArrayList<>(actualSize);
+        expectKeys.forEach(expectList::add);
+        actualKeys.forEach(actualList::add);
+        int first = ParallelMismatch.byString(expectList.size(), actualList.size(),
+                expectList::get, actualList::get);
+        if (first >= 0) {
+            HashMap<String, Integer> remaining = new HashMap<>();
+            for (int i = first; i < actualList.size(); i++) {
+                remaining.merge(String.valueOf(actualList.get(i)), 1, Integer::sum);
             }
-        } else if (OrderedST.class.isAssignableFrom(expectClass)) {
-            Iterable<?> expectKeys = ((OrderedST<?,?>) expect).keys();
-            OrderedST expectST = (OrderedST) expect;
-            OrderedST actualST = (OrderedST) actual;
-
-            assertEquals(expectST.size(), actualST.size(), String.format(
-                    "ST sizes do not match\n%s", hint));
-            for (Object key : expectKeys) {
-                if (!actualST.contains((Comparable) key)) {
+            for (int i = first; i < expectList.size(); i++) {
+                Object key = expectList.get(i);
+                String keyString = String.valueOf(key);
+                Integer count = remaining.get(keyString);
+                if (count == null) {
                     fail(String.format("ST is missing the key: %s\n%s", key, hint));
+                } else if (count == 1) {
+                    remaining.remove(keyString);
                 } else {
-                    compareValues(expectST.get((Comparable) key), actualST.get((Comparable) key),
-                            String.format("Incorrect value for key: %s\n%s", key, hint));
+                    remaining.put(keyString, count - 1);
                 }
             }
-        } else if (BasicST.class.isAssignableFrom(expectClass)) {
-            Iterable<?> expectKeys = ((BasicST<?,?>) expect).keys();
-            BasicST expectST = (BasicST) expect;
-            BasicST actualST = (BasicST) actual;
-
-            assertEquals(expectST.size(), actualST.size(), String.format(
-                    "ST sizes do not match\n%s", hint));
-            for (Object key : expectKeys) {
-                if (!actualST.contains((Comparable) key)) {
-                    fail(String.format("ST is missing the key: %s\n%s", key, hint));
-                } else {
-                    compareValues(expectST.get((Comparable) key), actualST.get((Comparable) key),
-                            String.format("Incorrect value for key: %s\n%s", key, hint));
-                }
+            if (!remaining.isEmpty()) {
+                List<String> extra = new ArrayList<>(remaining.keySet());
+                fail(String.format("ST has %d unexpected key%s: %s%s\n%s", extra.size(),
+                        extra.size() > 1 ? "s" : "", String.join(", ", extra.subList(0, Math.min(10, extra.size()))),
+                        extra.size() > 10 ? ", ..." : "", hint));
             }
-        } else {
-//            System.err.println("!expectClass.equals(actualClass) && expectClass.toString().equals(actualClass.toString()):\n"
-//                    + !expectClass.equals(actualClass) + " && " + expectClass.toString().equals(actualClass.toString()));
-            if (expectClass.toString().contains("RectHV")) {
-                RectHV e = (RectHV) expect;
-                RectHV a = (RectHV) actual;
-                boolean truth = expect.equals(actual);
-                System.err.printf("expect.equals(actual) returns %s. Checking their values...\n" +
-                        "Here is each as a String:\n" +
-                        "  expect: %s\n" +
-                        "  actual: %s\n" +
-                        "RectHV e = (RectHV) expect\nRectHV a = (RectHV) actual\n" +
-                        "e.xMin() == a.xMin() ? %s\n" +
-                        "e.yMin() == a.yMin() ? %s\n" +
-                        "e.xMax() == a.xMax() ? %s\n" +
-                        "e.yMax() == a.yMax() ? %s\n", truth, expect, actual,
-                        e.xMin() == a.xMin(), e.yMin() == a.yMin(),
-                        e.xMax() == a.xMax(), e.yMax() == a.yMax());
-                if (!expect.equals(actual)) {
-                    System.err.printf("If not equal, are their .getClass() values equal?\n" +
-                                    "%s.equals(%s): %s\n", expectClass, actualClass,
-                            expectClass.equals(actualClass));
-                }
+        }
+
+        // Every value is compared. contains() only repeats what keys() showed, so it is sampled
+        int stride = Math.max(1, expectList.size() / sampleSize);
+        for (int i = 0; i < expectList.size(); i++) {
+            Object key = expectList.get(i);
+            boolean sampled = i % stride == 0 || i == expectList.size() - 1;
+            if (sampled && !actualContains.test(key)) {
+                fail(String.format("ST is missing the key: %s\n%s", key, hint));
             }
-            assertEquals(expect, actual, hint);
+            compareValues(expectGet.apply(key), actualGet.apply(key),
+                    String.format("Incorrect value for key: %s\n%s", key, hint));
         }
     }
 
     static void compareFields(Object expect, Object actual, String hint) {
-        StringBuilder sb = new StringBuilder("0:Start");
-        compareFields(expect, actual, hint, sb, 0);
+        traced("fields", () -> GraphComparison.compare(expect, actual, hint));
     }
 
-    // TODO: Clean this up, and/or consolidate it with other methods
-    static void compareFields(Object expect, Object actual, String hint, StringBuilder sb, int level) {
-        Class<?> expectClass = expect.getClass();
-        Class<?> actualClass = actual.getClass();
-        System.err.printf("Comparing fields for %s\n", expectClass.getSimpleName());
-
-        for (Field expectField : expectClass.getDeclaredFields()) {
-            // Inner classes have a reference to the outer class. Avoid circular reference.
-            if (expectField.getName().equals("this$0")) continue;
-            System.err.printf("  checking %s\n", expectField.getName());
-            try {
-                Field actualField = actualClass.getDeclaredField(expectField.getName());
-                expectField.setAccessible(true);
-                actualField.setAccessible(true);
-                Class<?> expectFieldType = expectField.getType();
-                Class<?> actualFieldType = actualField.getType();
-                Object expectFieldObj = expectField.get(expect);
-                Object actualFieldObj = actualField.get(actual);
-                String msg2 = sb.length() > 10 ? String.format("Route so far: %s\n", sb.toString()) : "";
-                String msg = String.format("\nFailed when comparing the <%s> field of <%s> at " +
-                                "level %d (if applicable)\n%s%s\n",
-                        expectField.getName(), expectClass.getSimpleName(), level, msg2, hint);
-                if (expectFieldObj != null && actualFieldObj != null &&
-                        !expectFieldType.equals(actualFieldType) &&
-                        expectFieldType.toString().equals(actualFieldType.toString())) {
-                    try {
-                        expectFieldType.getDeclaredMethod("toString");
-                        msg = "\nUsing the toString() method to compare objects." + msg;
-                        assertEquals(expectFieldObj.toString(), actualFieldObj.toString(), msg);
-                    } catch (NoSuchMethodException e) {
-                        // If there's no defined toString method, check each of the object's fields
-                        sb.append("\u2193").append(expectField.getName()).append(level+1).append(":");
-                        compareFields(expectFieldObj, actualFieldObj, hint, sb, level +1);
-                        sb.append("\u2191").append(level).append(":");
-                    }
-                } else if (expectFieldObj != null && actualFieldObj != null &&
-                        Iterable.class.isAssignableFrom(expectFieldType)) {
-                    compareIterators(
-                            ((Iterable<?>)expectFieldObj).iterator(),
-                            ((Iterable<?>)actualFieldObj).iterator(), msg);
-                } else {
-                    try {
-                        expectFieldType.getDeclaredMethod("toString");
-                        msg = "\nUsing the toString() method to compare objects." + msg;
-                        assertEquals(expectFieldObj.toString(), actualFieldObj.toString(), msg);
-                    } catch (NoSuchMethodException e) {
-                        assertEquals(expectFieldObj, actualFieldObj, msg);
-                    }
+    /*
+     * Compares two iterables as multisets of their string values, in linear time.
+     */
+    static void compareUnordered(Iterable<?> expect, Iterable<?> actual, String hint) {
+        final int shown = 10;   // Number of missing or extra values listed
+        LinkedHashMap<String, Integer> counts = new LinkedHashMap<>();
+        for (Object item : actual) {
+            counts.merge(Objects.requireNonNullElse(item, "null").toString(), 1, Integer::sum);
+        }
+        List<String> missing = new ArrayList<>();
+        int missingCount = 0;
+        for (Object item : expect) {
+            String curr = Objects.requireNonNullElse(item, "null").toString();
+            Integer count = counts.get(curr);
+            if (count == null) {
+                if (missingCount++ < shown) missing.add(curr);
+            } else if (count == 1) {
+                counts.remove(curr);
+            } else {
+                counts.put(curr, count - 1);
+            }
+        }
+        if (missingCount > 0) {
+            fail(String.format("Missing expected value%s:\n%s%s\n%s",
+                    missingCount > 1 ? "s" : "", String.join("\n", missing),
+                    missingCount > shown ? String.format("\n... and %d more", missingCount - shown) : "",
+                    hint));
+        }
+        if (!counts.isEmpty()) {
+            int extraCount = 0;
+            StringBuilder extra = new StringBuilder();
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                if (extraCount < shown) {
+                    extra.append("  ").append(entry.getKey());
+                    if (entry.getValue() > 1) extra.append(" (").append(entry.getValue()).append(" times)");
+                    extra.append("\n");
                 }
-            } catch (NoSuchFieldException e) {
-                String msg = String.format("\nFailed when comparing the <%s> field of <%s>\n" +
-                                "Field missing: %s\n%s\n",
-                        expectField.getName(), expectClass.getSimpleName(),
-                        expectField.getName(), hint);
-                fail(msg);
-                e.printStackTrace();
-            } catch (IllegalAccessException e) {
-                fail("Error accessing field. (TestUtils#compareFields -> IllegalAccessException)");
-                e.printStackTrace();
+                extraCount += entry.getValue();
             }
+            assertEquals(0, extraCount, String.format("Your algorithm produces extra values.\n" +
+                    "First extra values:\n%s%s", extra, hint));
         }
     }
 
-
-
     public static LinkedList<String> iterableToStringList(Iterable<?> it) {
         LinkedList<String> list = new LinkedList<>();
         it.forEach((item) -> list.add(Objects.requireNonNullElse(item, "null").toString()));
         return list;
     }
 
-    private static boolean isCommonType(Class<?> clazz) {
+    static boolean isCommonType(Class<?> clazz) {
         return clazz == Integer.class || clazz == Float.class || clazz == String.class
             || clazz == Boolean.class || clazz == Short.class || clazz == Double.class
             || clazz == Long.class    || clazz == Byte.class  || clazz == Character.class;
     }
 
     static void compareStdOut(String expect, String actual, String hint) {
+        traced("stdout", () -> compareLines(expect, actual, hint));
+    }
+
+    private static void compareLines(String expect, String actual, String hint) {
+        if (expect.equals(actual)) return;
         if (expect.length() < 100) {
-            if (expect.length() <= 25) {
-                try {
-                    double expectD = Double.parseDouble(expect);
-                    double actualD = Double.parseDouble(actual);
-//                    System.err.println("Attempting to compare strings as doubles");
-                    assertEquals(expectD, actualD, 0.005, hint);
-                    return;
-                } catch (NumberFormatException e) {
-                    // do nothing
-                }
-            }
+            if (NumericTokens.matchesWithin(expect, actual)) return;
             assertEquals("\n"+expect+"\n", "\n"+actual+"\n", hint);
         } else {
-            LinkedList<String> expectList = string2LineList(expect);
-            LinkedList<String> actualList = string2LineList(actual);
-
-            String sideBySide = stackOutputSideBySide(expectList, actualList);
+            // Walk the lines of both outputs together. The line lists are only built for feedback.
+            int line = 0;
             int i = 0;
-            String feedback = "\n%s\nFailed on line %d of output.\n" +
-                    "Here's a side-by-side of the output:\n%s\n";
-            while (!expectList.isEmpty() && !actualList.isEmpty()) {
-                String expectCurrent = "\n"+expectList.removeFirst()+"\n";
-                String actualCurrent = "\n"+actualList.removeFirst()+"\n";
-                String failMessage = String.format(feedback, hint, i++, sideBySide);
-                assertEquals(expectCurrent, actualCurrent, failMessage);
+            int j = 0;
+            while (i < expect.length() && j < actual.length()) {
+                int eEnd = NumericTokens.lineEnd(expect, i);
+                int aEnd = NumericTokens.lineEnd(actual, j);
+                if (!NumericTokens.matches(expect, i, eEnd, actual, j, aEnd)) {
+                    List<String> expectList = new ArrayList<>(string2LineList(expect));
+                    List<String> actualList = new ArrayList<>(string2LineList(actual));
+                    String feedback = "\n%s\nFailed on line %d of output.\n" +
+                            "Here are the differences between the outputs:\n%s\n";
+                    assertEquals("\n"+expect.substring(i, eEnd)+"\n", "\n"+actual.substring(j, aEnd)+"\n",
+                            String.format(feedback, hint, line, OutputDiff.render(expectList, actualList)));
+                }
+                i = NumericTokens.nextLine(expect, eEnd);
+                j = NumericTokens.nextLine(actual, aEnd);
+                line++;
+            }
+            if (i < expect.length() || j < actual.length()) {
+                List<String> expectList = new ArrayList<>(string2LineList(expect));
+                List<String> actualList = new ArrayList<>(string2LineList(actual));
+                String feedback = "%s\nYour solution produced output of unexpected length\n" +
+                        "Review these differences between the outputs and adjust your solution:\n%s";
+                assertEquals(expectList.size(), actualList.size(),
+                        String.format(feedback, hint, OutputDiff.render(expectList, actualList)));
             }
-            feedback = "%s\nYour solution produced output of unexpected length\n" +
-                    "Review this side-by-side of output and adjust your solution:\n%s";
-            assertEquals(expectList.size(), actualList.size(),
-                    String.format(feedback, hint, sideBySide));
         }
     }
 
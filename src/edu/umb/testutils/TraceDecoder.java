@@ -0,0 +1,115 @@
+package edu.umb.testutils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+
+import static edu.umb.testutils.TraceRecorder.*;
+
+/**
+ * Prints the timeline stored in a trace file written by {@link TraceRecorder}, followed by
+ * the slowest tests of the run.
+ *
+ * Usage: java -cp testutils.jar edu.umb.testutils.TraceDecoder trace.bin
+ *
+ * @author James Michaud
+ */
+public final class TraceDecoder {
+    private TraceDecoder() { /* no-op */ }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: java edu.umb.testutils.TraceDecoder <trace file>");
+            System.exit(1);
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(args[0])))) {
+            decode(in, new PrintStream(new BufferedOutputStream(System.out), false));
+        }
+    }
+
+    static void decode(DataInputStream in, PrintStream out) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Not a trace file");
+        int version = in.readInt();
+        if (version != VERSION) throw new IOException("Unsupported trace version " + version);
+        out.printf("Trace started %s%n", Instant.ofEpochMilli(in.readLong()));
+
+        List<String> strings = new ArrayList<>();
+        HashMap<Integer, Long> started = new HashMap<>();
+        HashMap<Integer, Long> durations = new HashMap<>();
+        int test = 0;
+        while (true) {
+            byte type;
+            try {
+                type = in.readByte();
+            } catch (EOFException e) {
+                break;
+            }
+            long time = in.readLong();
+            String stamp = String.format("%12.3f ms  ", time / 1e6);
+            String indent = test == 0 ? "" : "    ";
+            switch (type) {
+                case STRING:
+                    int id = in.readInt();
+                    byte[] bytes = new byte[in.readUnsignedShort()];
+                    in.readFully(bytes);
+                    while (strings.size() <= id) strings.add(null);
+                    strings.set(id, new String(bytes, StandardCharsets.UTF_8));
+                    break;
+                case TEST_START:
+                    test = in.readInt();
+                    started.put(test, time);
+                    out.printf("%sTest %d started%n", stamp, test);
+                    break;
+                case TEST_END:
+                    int ended = in.readInt();
+                    boolean passed = in.readByte() == 1;
+                    Long start = started.get(ended);
+                    if (start != null) durations.put(ended, time - start);
+                    out.printf("%sTest %d %s%s%n", stamp, ended, passed ? "passed" : "FAILED",
+                            start == null ? "" : String.format(" after %.3f ms", (time - start) / 1e6));
+                    test = 0;
+                    break;
+                case SETUP:
+                    String method = strings.get(in.readInt());
+                    int calls = in.readInt();
+                    out.printf("%s%sSetup: %s%s%n", stamp, indent, method,
+                            calls == 1 ? "" : String.format(" x%d", calls));
+                    break;
+                case INVOKE:
+                    String invoked = strings.get(in.readInt());
+                    byte side = in.readByte();
+                    long duration = in.readLong();
+                    boolean completed = in.readByte() == 1;
+                    out.printf("%s%s%s %s took %.3f ms%s%n", stamp, indent,
+                            side == EXPECT ? "Solution  " : "Submission", invoked, duration / 1e6,
+                            completed ? "" : " (threw or timed out)");
+                    break;
+                case COMPARE:
+                    String kind = strings.get(in.readInt());
+                    long compareTime = in.readLong();
+                    boolean matched = in.readByte() == 1;
+                    out.printf("%s%sCompared %s in %.3f ms: %s%n", stamp, indent, kind,
+                            compareTime / 1e6, matched ? "match" : "MISMATCH");
+                    break;
+                case OUTPUT:
+                    byte outputSide = in.readByte();
+                    int characters = in.readInt();
+                    out.printf("%s%s%s printed %d characters%n", stamp, indent,
+                            outputSide == EXPECT ? "Solution  " : "Submission", characters);
+                    break;
+                default:
+                    throw new IOException("Unknown trace event type " + type);
+            }
+        }
+
+        List<Map.Entry<Integer, Long>> slowest = new ArrayList<>(durations.entrySet());
+        slowest.sort(Map.Entry.<Integer, Long>comparingByValue().reversed());
+        out.println("\nSlowest tests:");
+        for (Map.Entry<Integer, Long> entry : slowest.subList(0, Math.min(10, slowest.size()))) {
+            out.printf("  Test %-5d %12.3f ms%n", entry.getKey(), entry.getValue() / 1e6);
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,192 @@
+package edu.umb.testutils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.logging.Logger;
+
+/**
+ * Records a compact binary trace of a grading run: tests starting and ending, setup steps,
+ * method invocations with their durations, comparison outcomes and captured output sizes.
+ *
+ * Events are written into one of two preallocated direct buffers. When the active buffer is
+ * full it is handed to a background thread that writes it to the trace file, while events go
+ * into the other buffer. Recording is off unless {@link #start(String)} is called, in which
+ * case every method here returns immediately. {@link TraceDecoder} turns a trace file into a
+ * readable timeline.
+ *
+ * Layout: a header (magic, version, start time in epoch milliseconds) followed by events.
+ * Every event starts with its type byte and the nanoseconds since the trace started. Strings
+ * are written once, as a STRING event, and referred to by id afterwards.
+ *
+ * @author James Michaud
+ */
+final class TraceRecorder {
+    private static final Logger logger = Logger.getLogger(TraceRecorder.class.getName());
+    static final int MAGIC   = 0x54524345;  // "TRCE"
+    static final int VERSION = 1;
+
+    static final byte STRING     = 0;   // int id, short length, UTF-8 bytes
+    static final byte TEST_START = 1;   // int test number
+    static final byte TEST_END   = 2;   // int test number, byte passed
+    static final byte SETUP      = 3;   // int method id, int calls
+    static final byte INVOKE     = 4;   // int method id, byte side, long duration, byte completed
+    static final byte COMPARE    = 5;   // int kind id, long duration, byte passed
+    static final byte OUTPUT     = 6;   // byte side, int characters
+
+    static final byte EXPECT = 0;       // Solution side
+    static final byte ACTUAL = 1;       // Submission side
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_STRING  = 200;         // Longer strings are cut
+
+    private static volatile boolean enabled;
+    private static FileChannel channel;
+    private static ByteBuffer active;
+    private static ArrayBlockingQueue<ByteBuffer> full;
+    private static ArrayBlockingQueue<ByteBuffer> free;
+    private static HashMap<String, Integer> strings;
+    private static long startNanos;
+
+    private TraceRecorder() { /* no-op */ }
+
+    static synchronized void start(String path) {
+        if (enabled) return;
+        try {
+            channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            logger.warning(String.format("Could not open trace file %s: %s", path, e));
+            return;
+        }
+        active = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        full = new ArrayBlockingQueue<>(1);
+        free = new ArrayBlockingQueue<>(1);
+        free.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+        strings = new HashMap<>();
+        startNanos = System.nanoTime();
+        active.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis());
+
+        Thread writer = new Thread(TraceRecorder::writeLoop, "testutils-trace-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(TraceRecorder::finish));
+        enabled = true;
+        logger.info(String.format("Recording execution trace to %s", path));
+    }
+
+    static boolean isEnabled() { return enabled; }
+
+    /* Returns the current time for a later duration, or 0 when recording is off */
+    static long now() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    static synchronized void testStart(int test) {
+        if (!enabled) return;
+        event(TEST_START, 4).putInt(test);
+    }
+
+    static synchronized void testEnd(int test, boolean passed) {
+        if (!enabled) return;
+        event(TEST_END, 5).putInt(test).put((byte) (passed ? 1 : 0));
+    }
+
+    static synchronized void setupStep(String method, int calls) {
+        if (!enabled) return;
+        int id = id(method);
+        event(SETUP, 8).putInt(id).putInt(calls);
+    }
+
+    static synchronized void invocation(String method, boolean expect, long start, boolean completed) {
+        if (!enabled || start == 0) return;
+        long duration = System.nanoTime() - start;
+        int id = id(method);
+        event(INVOKE, 14).putInt(id).put(expect ? EXPECT : ACTUAL).putLong(duration)
+                .put((byte) (completed ? 1 : 0));
+    }
+
+    static synchronized void comparison(String kind, long start, boolean passed) {
+        if (!enabled || start == 0) return;
+        long duration = System.nanoTime() - start;
+        int id = id(kind);
+        event(COMPARE, 13).putInt(id).putLong(duration).put((byte) (passed ? 1 : 0));
+    }
+
+    static synchronized void output(boolean expect, int characters) {
+        if (!enabled) return;
+        event(OUTPUT, 5).put(expect ? EXPECT : ACTUAL).putInt(characters);
+    }
+
+    /**
+     * Writes out everything recorded so far and stops recording.
+     */
+    static synchronized void finish() {
+        if (!enabled) return;
+        enabled = false;
+        try {
+            ByteBuffer spare = free.take();     // The writer is idle once the spare is back
+            active.flip();
+            while (active.hasRemaining()) channel.write(active);
+            channel.close();
+            free.add(spare);
+        } catch (IOException | InterruptedException e) {
+            logger.warning(String.format("Could not finish trace: %s", e));
+        }
+    }
+
+    /* Starts an event with room for size bytes of payload */
+    private static ByteBuffer event(byte type, int size) {
+        ensure(1 + 8 + size);
+        return active.put(type).putLong(System.nanoTime() - startNanos);
+    }
+
+    private static int id(String str) {
+        Integer id = strings.get(str);
+        if (id == null) {
+            id = strings.size();
+            strings.put(str, id);
+            byte[] bytes = (str.length() > MAX_STRING ? str.substring(0, MAX_STRING) : str)
+                    .getBytes(StandardCharsets.UTF_8);
+            event(STRING, 6 + bytes.length).putInt(id).putShort((short) bytes.length).put(bytes);
+        }
+        return id;
+    }
+
+    // Swaps in the spare buffer when the active one cannot hold another event
+    private static void ensure(int bytes) {
+        if (active.remaining() >= bytes) return;
+        try {
+            ByteBuffer spare = free.take();
+            full.put(active);
+            active = spare;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            active.clear();     // Events are lost rather than blocking the test
+        }
+    }
+
+    private static void writeLoop() {
+        while (true) {
+            ByteBuffer buffer;
+            try {
+                buffer = full.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                buffer.flip();
+                while (buffer.hasRemaining()) channel.write(buffer);
+            } catch (IOException e) {
+                logger.warning(String.format("Could not write trace: %s", e));
+            }
+            buffer.clear();
+            free.add(buffer);
+        }
+    }
+}